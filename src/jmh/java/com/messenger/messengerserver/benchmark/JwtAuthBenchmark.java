@@ -0,0 +1,66 @@
+package com.messenger.messengerserver.benchmark;
+
+import com.messenger.messengerserver.util.JwtUtil;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.io.Decoders;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость проверки JWT на один запрос в JwtAuthenticationFilter:
+ * прежний путь (extractUsername + validateToken - два разбора, ключ из строки каждый раз),
+ * один разбор готовым парсером и JwtUtil.validateAndGetUsername с кэшем проверенных токенов
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtAuthBenchmark {
+
+    private static final String SECRET =
+            "mySuperSecretKeyForMessengerApplication2024ThatIsVeryLongAndSecureForHS512AlgorithmAndMustBeAtLeast64CharactersLongForSecurity";
+
+    private JwtUtil jwtUtil;
+    private JwtParser parser;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(jwtUtil, "accessTokenExpiration", 2592000000L);
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxSize", 100000L);
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxTtlSeconds", 600L);
+        jwtUtil.init();
+
+        parser = Jwts.parserBuilder()
+                .setSigningKey(new SecretKeySpec(Decoders.BASE64.decode(SECRET), SignatureAlgorithm.HS512.getJcaName()))
+                .build();
+        token = jwtUtil.generateAccessToken("benchmark-user");
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public String legacyTwoParses() {
+        String username = Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody().getSubject();
+        Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token);
+        return username;
+    }
+
+    @Benchmark
+    public String singleParse() {
+        return parser.parseClaimsJws(token).getBody().getSubject();
+    }
+
+    @Benchmark
+    public String cachedVerify() {
+        return jwtUtil.validateAndGetUsername(token);
+    }
+}
@@ -0,0 +1,114 @@
+package com.messenger.messengerserver.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Логирование на пути сообщения (как в MessageController.processMessage + MessageDeliveryService):
+ * прежний System.out с форматированием времени, SLF4J при выключенном DEBUG и SLF4J DEBUG через AsyncAppender.
+ * Вывод уходит в пустой поток - измеряется стоимость для потоков обработки, а не консоли
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class LoggingBenchmark {
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    private final String sender = "alice";
+    private final String receiver = "bob";
+    private final long messageId = 1234567890123L;
+
+    private PrintStream originalOut;
+    private PrintStream nullOut;
+    private LoggerContext loggerContext;
+    private org.slf4j.Logger debugOff;
+    private org.slf4j.Logger debugOnAsync;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        originalOut = System.out;
+        nullOut = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(nullOut);
+
+        loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern("%d{HH:mm:ss.SSS} %-5level [%thread] %logger{36} - %msg%n");
+        encoder.start();
+
+        OutputStreamAppender<ILoggingEvent> sink = new OutputStreamAppender<>();
+        sink.setContext(loggerContext);
+        sink.setEncoder(encoder);
+        sink.setOutputStream(OutputStream.nullOutputStream());
+        sink.start();
+
+        AsyncAppender async = new AsyncAppender();
+        async.setContext(loggerContext);
+        async.setQueueSize(8192);
+        async.setNeverBlock(true);
+        async.addAppender(sink);
+        async.start();
+
+        Logger off = loggerContext.getLogger("bench.debug-off");
+        off.detachAndStopAllAppenders();
+        off.setAdditive(false);
+        off.setLevel(ch.qos.logback.classic.Level.INFO);
+        off.addAppender(async);
+        debugOff = off;
+
+        Logger on = loggerContext.getLogger("bench.debug-on");
+        on.detachAndStopAllAppenders();
+        on.setAdditive(false);
+        on.setLevel(ch.qos.logback.classic.Level.DEBUG);
+        on.addAppender(async);
+        debugOnAsync = on;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(originalOut);
+        loggerContext.stop();
+    }
+
+    @Benchmark
+    public void systemOut() {
+        System.out.println("[" + LocalDateTime.now().format(TIME_FORMATTER) + "] WebSocket message received from: " +
+                sender + " to: " + receiver);
+        System.out.println("[" + LocalDateTime.now().format(TIME_FORMATTER) + "] 📨 Message sent to online receiver: " +
+                receiver);
+        System.out.println("[" + LocalDateTime.now().format(TIME_FORMATTER) + "] Message saved with status: SENT for sender: " +
+                sender + " id " + messageId);
+    }
+
+    @Benchmark
+    public void slf4jDebugOff() {
+        debugOff.debug("WebSocket message received from: {} to: {}", sender, receiver);
+        debugOff.debug("📨 Message sent to online receiver: {}", receiver);
+        debugOff.debug("Message saved with status: SENT for sender: {} id {}", sender, messageId);
+    }
+
+    @Benchmark
+    public void slf4jDebugOnAsync() {
+        debugOnAsync.debug("WebSocket message received from: {} to: {}", sender, receiver);
+        debugOnAsync.debug("📨 Message sent to online receiver: {}", receiver);
+        debugOnAsync.debug("Message saved with status: SENT for sender: {} id {}", sender, messageId);
+    }
+}
@@ -0,0 +1,58 @@
+package com.messenger.messengerserver.benchmark;
+
+import com.messenger.messengerserver.dto.MessageDto;
+import com.messenger.messengerserver.mapper.MessageMapper;
+import com.messenger.messengerserver.model.Message;
+import com.messenger.messengerserver.model.MessageStatus;
+import com.messenger.messengerserver.model.MessageType;
+import com.messenger.messengerserver.model.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MessageMapper.toDto: через sender/receiver сущности (история, непрочитанные) и с уже известными
+ * usernames (ingest). Сущности - обычные объекты, без ленивых прокси Hibernate
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageMapperBenchmark {
+
+    private MessageMapper messageMapper;
+    private Message message;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        messageMapper = new MessageMapper();
+
+        User sender = new User();
+        sender.setUsername("alice");
+        User receiver = new User();
+        receiver.setUsername("bob");
+
+        message = new Message();
+        message.setId(7234567890123456789L);
+        message.setContent("Привет! Как дела? Встречаемся завтра в 10:00 у входа");
+        message.setTimestamp(LocalDateTime.now());
+        message.setIsRead(false);
+        message.setType(MessageType.TEXT);
+        message.setStatus(MessageStatus.DELIVERED);
+        message.setSender(sender);
+        message.setReceiver(receiver);
+    }
+
+    @Benchmark
+    public MessageDto toDto() {
+        return messageMapper.toDto(message);
+    }
+
+    @Benchmark
+    public MessageDto toDtoWithKnownUsernames() {
+        return messageMapper.toDto(message, "alice", "bob");
+    }
+}
@@ -0,0 +1,109 @@
+package com.messenger.messengerserver.benchmark;
+
+import com.messenger.messengerserver.model.Message;
+import com.messenger.messengerserver.model.MessageStatus;
+import com.messenger.messengerserver.service.MessageWriteBuffer;
+import com.messenger.messengerserver.util.SnowflakeIdGenerator;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Вставки сообщений в секунду: транзакция на каждое сообщение (прежний путь saveMessage)
+ * против write-behind буфера с group commit. Каждый поток шлёт пачку из BURST сообщений,
+ * как входящий STOMP поток, который не ждёт коммита (подтверждение уходит из callback'а).
+ * По умолчанию H2 in-memory; для MySQL: -Djmh.args="-jvmArgs -Dbench.jdbc.url=jdbc:mysql://..."
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class MessagePersistenceBenchmark {
+
+    private static final int BURST = 100;
+
+    private static final String CREATE_TABLE_SQL =
+            "CREATE TABLE IF NOT EXISTS messages (" +
+            "id BIGINT PRIMARY KEY, content VARCHAR(2000) NOT NULL, timestamp TIMESTAMP, " +
+            "is_read BOOLEAN, type VARCHAR(32), status VARCHAR(32), sender_id BIGINT, receiver_id BIGINT, " +
+            "conversation_key VARCHAR(64))";
+
+    @Param({"20", "100"})
+    public int batchSize;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private MessageWriteBuffer writeBuffer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(System.getProperty("bench.jdbc.url",
+                "jdbc:h2:mem:messages;MODE=MySQL;DB_CLOSE_DELAY=-1"));
+        dataSource.setUsername(System.getProperty("bench.jdbc.user", "sa"));
+        dataSource.setPassword(System.getProperty("bench.jdbc.password", ""));
+        dataSource.setMaximumPoolSize(20);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute(CREATE_TABLE_SQL);
+
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        writeBuffer = new MessageWriteBuffer(jdbcTemplate, transactionManager, batchSize, 5, 100_000);
+        writeBuffer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        writeBuffer.stop();
+        jdbcTemplate.execute("DELETE FROM messages");
+        dataSource.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void transactionPerMessage() {
+        for (int i = 0; i < BURST; i++) {
+            Message message = newMessage();
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(MessageWriteBuffer.INSERT_SQL,
+                    SnowflakeIdGenerator.nextId(),
+                    message.getContent(),
+                    Timestamp.valueOf(message.getTimestamp()),
+                    false,
+                    message.getType().name(),
+                    message.getStatus().name(),
+                    1L,
+                    2L,
+                    Message.conversationKey(1L, 2L)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void writeBehindGroupCommit() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[BURST];
+        for (int i = 0; i < BURST; i++) {
+            futures[i] = writeBuffer.submit(newMessage(), 1L, 2L);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    private Message newMessage() {
+        Message message = new Message();
+        message.setContent("benchmark message");
+        message.setStatus(MessageStatus.SENT);
+        message.setIsRead(false);
+        return message;
+    }
+}
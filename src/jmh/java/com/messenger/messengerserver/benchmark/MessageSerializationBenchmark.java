@@ -0,0 +1,94 @@
+package com.messenger.messengerserver.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.messenger.messengerserver.dto.MessageDto;
+import com.messenger.messengerserver.dto.MessageStatusBatchUpdateDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson на STOMP пути: MessageDto в /queue/messages, пачка статусов List<MessageDto> в /queue/status
+ * и разбор входящего /app/status/batch. ObjectMapper настроен как в RedisConfig (и как STOMP конвертер Boot):
+ * JavaTimeModule, даты строкой
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private ObjectWriter messageWriter;
+    private MessageDto message;
+
+    /**
+     * Пачки статусов - отдельное состояние, чтобы одиночные замеры не повторялись на каждый batchSize
+     */
+    @State(Scope.Benchmark)
+    public static class StatusBatch {
+
+        @Param({"10", "100"})
+        public int batchSize;
+
+        private List<MessageDto> messages;
+        private byte[] updateJson;
+
+        @Setup(Level.Trial)
+        public void setUp(MessageSerializationBenchmark benchmark) throws Exception {
+            messages = new ArrayList<>(batchSize);
+            List<Long> ids = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                MessageDto dto = message(7234567890123456789L + i);
+                dto.setStatus("READ");
+                dto.setIsRead(true);
+                messages.add(dto);
+                ids.add(dto.getId());
+            }
+            updateJson = benchmark.objectMapper.writeValueAsBytes(new MessageStatusBatchUpdateDto(ids, "READ", "bob"));
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        messageWriter = objectMapper.writerFor(MessageDto.class);
+
+        message = message(7234567890123456789L);
+    }
+
+    private static MessageDto message(long id) {
+        return new MessageDto(id, "Привет! Как дела? Встречаемся завтра в 10:00 у входа",
+                LocalDateTime.now(), false, "alice", "bob", "TEXT", "SENT");
+    }
+
+    @Benchmark
+    public byte[] serializeMessage() throws Exception {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] serializeMessageWithTypedWriter() throws Exception {
+        return messageWriter.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] serializeStatusBatch(StatusBatch batch) throws Exception {
+        return objectMapper.writeValueAsBytes(batch.messages);
+    }
+
+    @Benchmark
+    public MessageStatusBatchUpdateDto deserializeStatusBatchUpdate(StatusBatch batch) throws Exception {
+        return objectMapper.readValue(batch.updateJson, MessageStatusBatchUpdateDto.class);
+    }
+}
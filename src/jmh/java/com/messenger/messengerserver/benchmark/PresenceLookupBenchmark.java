@@ -0,0 +1,94 @@
+package com.messenger.messengerserver.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Присутствие для страницы пользователей: прежний UserController.getUsers (2 GET на пользователя -
+ * статистика и convertUserToDTO) против одного MGET на всю страницу (UserPresenceService.getOnlineAmong
+ * без near-cache, т.е. худший случай - все промахи).
+ * Нужен локальный Redis: -Djmh.args="-jvmArgs -Dbench.redis.host=localhost -Dbench.redis.port=6379"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PresenceLookupBenchmark {
+
+    private static final String USER_SESSION_KEY = "bench:user:session:";
+
+    @Param({"1000", "10000"})
+    public int users;
+
+    private JedisConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private List<String> usernames;
+    private List<String> sessionKeys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("bench.redis.host", "localhost"),
+                Integer.getInteger("bench.redis.port", 6379));
+        connectionFactory = new JedisConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+
+        usernames = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            usernames.add("user" + i);
+        }
+        sessionKeys = usernames.stream().map(username -> USER_SESSION_KEY + username).collect(Collectors.toList());
+
+        // Онлайн каждый третий
+        for (int i = 0; i < users; i += 3) {
+            redisTemplate.opsForValue().set(sessionKeys.get(i), "session-" + i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        redisTemplate.delete(sessionKeys);
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public int getPerUserTwice() {
+        int online = 0;
+        for (String key : sessionKeys) {
+            if (redisTemplate.opsForValue().get(key) != null) {
+                online++;
+            }
+        }
+        Set<String> onlineUsernames = new HashSet<>();
+        for (int i = 0; i < sessionKeys.size(); i++) {
+            if (redisTemplate.opsForValue().get(sessionKeys.get(i)) != null) {
+                onlineUsernames.add(usernames.get(i));
+            }
+        }
+        return online + onlineUsernames.size();
+    }
+
+    @Benchmark
+    public int multiGetPage() {
+        List<String> sessions = redisTemplate.opsForValue().multiGet(sessionKeys);
+        Set<String> onlineUsernames = new HashSet<>();
+        for (int i = 0; i < sessionKeys.size(); i++) {
+            if (sessions != null && sessions.get(i) != null) {
+                onlineUsernames.add(usernames.get(i));
+            }
+        }
+        return onlineUsernames.size();
+    }
+}
@@ -0,0 +1,97 @@
+package com.messenger.messengerserver.benchmark;
+
+import com.messenger.messengerserver.config.RequestClassifier;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Классификация запроса в JwtAuthenticationFilter (путь, User-Agent, доверенный IP):
+ * прежние циклы по HashSet с toLowerCase на каждой итерации против RequestClassifier
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestClassifierBenchmark {
+
+    private static final List<String> TRUSTED_IPS = List.of("127.0.0.1", "0:0:0:0:0:0:0:1", "93.189.231.32");
+    private static final List<String> TRUSTED_IP_RANGES = List.of(
+            "192.168.", "10.0.", "172.16.", "172.17.", "172.18.", "172.19.",
+            "172.20.", "172.21.", "172.22.", "172.23.", "172.24.", "172.25.",
+            "172.26.", "172.27.", "172.28.", "172.29.", "172.30.", "172.31.");
+    private static final List<String> BLOCKED_USER_AGENTS = List.of(
+            "zgrab", "Go-http-client", "curl", "wget", "python-requests",
+            "Java-http-client", "masscan", "nmap", "nikto", "sqlmap",
+            "dirbuster", "gobuster", "ffuf", "hydra", "medusa", "burp", "zap");
+    private static final List<String> BLOCKED_PATHS = List.of(
+            ".git", ".env", ".aws", "credentials", ".yml", ".yaml",
+            ".properties", ".xml", ".json", ".sql", ".dump", ".bak",
+            ".old", ".save", ".dist", ".local", ".dev", ".test",
+            "wp-admin", "wp-login", "phpmyadmin", "mysql", "adminer");
+
+    private final Set<String> legacyTrustedIps = new HashSet<>(TRUSTED_IPS);
+    private final Set<String> legacyTrustedRanges = new HashSet<>(TRUSTED_IP_RANGES);
+    private final Set<String> legacyUserAgents = new HashSet<>(BLOCKED_USER_AGENTS);
+    private final Set<String> legacyPaths = new HashSet<>(BLOCKED_PATHS);
+
+    private RequestClassifier classifier;
+
+    // Типичный запрос приложения: путь API, User-Agent okhttp, внешний IP
+    private final String path = "/api/messages/conversation/alice?page=0&size=50";
+    private final String userAgent = "okhttp/4.12.0 (Android 14; Pixel 8) MessengerApp/2.3.1";
+    private final String ip = "85.140.12.77";
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        classifier = new RequestClassifier(BLOCKED_PATHS, BLOCKED_USER_AGENTS,
+                Arrays.asList("127.0.0.1", "::1", "93.189.231.32"),
+                Arrays.asList("192.168.0.0/16", "10.0.0.0/8", "172.16.0.0/12"));
+    }
+
+    @Benchmark
+    public void legacyLoops(Blackhole blackhole) {
+        String pathLower = path.toLowerCase();
+        boolean blockedPath = false;
+        for (String blocked : legacyPaths) {
+            if (pathLower.contains(blocked.toLowerCase())) {
+                blockedPath = true;
+                break;
+            }
+        }
+        blackhole.consume(blockedPath);
+
+        String uaLower = userAgent.toLowerCase();
+        boolean bot = false;
+        for (String blocked : legacyUserAgents) {
+            if (uaLower.contains(blocked.toLowerCase())) {
+                bot = true;
+                break;
+            }
+        }
+        blackhole.consume(bot);
+
+        boolean trusted = legacyTrustedIps.contains(ip);
+        for (String range : legacyTrustedRanges) {
+            if (ip.startsWith(range)) {
+                trusted = true;
+                break;
+            }
+        }
+        blackhole.consume(trusted);
+    }
+
+    @Benchmark
+    public void compiledClassifier(Blackhole blackhole) {
+        blackhole.consume(classifier.isBlockedPath(path));
+        blackhole.consume(classifier.isBotUserAgent(userAgent));
+        blackhole.consume(classifier.isTrustedIp(ip));
+    }
+}
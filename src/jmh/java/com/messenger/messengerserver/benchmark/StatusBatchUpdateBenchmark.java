@@ -0,0 +1,133 @@
+package com.messenger.messengerserver.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Пачка read receipts: прежний цикл processStatusBatchUpdate (SELECT с JOIN пользователей
+ * и UPDATE на каждый ID) против SELECT ... FOR UPDATE + одного UPDATE на всю пачку.
+ * Перед каждым вызовом сообщения возвращаются в SENT.
+ * По умолчанию H2 in-memory; для MySQL: -Djmh.args="-jvmArgs -Dbench.jdbc.url=jdbc:mysql://..."
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatusBatchUpdateBenchmark {
+
+    private static final long SENDER_ID = 1L;
+    private static final long RECEIVER_ID = 2L;
+    private static final int TOTAL_MESSAGES = 5000;
+
+    private static final String PER_ID_SELECT_SQL =
+            "SELECT m.id, m.status, m.is_read, s.username, r.username FROM messages m " +
+            "JOIN users s ON s.id = m.sender_id JOIN users r ON r.id = m.receiver_id WHERE m.id = ?";
+
+    private static final String PER_ID_UPDATE_SQL =
+            "UPDATE messages SET status = ?, is_read = ? WHERE id = ?";
+
+    private static final String SET_SELECT_SQL =
+            "SELECT id, status, is_read, sender_id FROM messages " +
+            "WHERE id IN (:ids) AND receiver_id = :receiverId AND status IN (:lowerStatuses) FOR UPDATE";
+
+    private static final String SET_UPDATE_SQL =
+            "UPDATE messages SET status = :status, is_read = TRUE " +
+            "WHERE id IN (:ids) AND receiver_id = :receiverId AND status IN (:lowerStatuses)";
+
+    @Param({"10", "100", "1000"})
+    public int batchSize;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private List<Long> messageIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(System.getProperty("bench.jdbc.url",
+                "jdbc:h2:mem:status;MODE=MySQL;DB_CLOSE_DELAY=-1"));
+        dataSource.setUsername(System.getProperty("bench.jdbc.user", "sa"));
+        dataSource.setPassword(System.getProperty("bench.jdbc.password", ""));
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS users (id BIGINT PRIMARY KEY, username VARCHAR(64))");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS messages (" +
+                "id BIGINT PRIMARY KEY, content VARCHAR(2000), status VARCHAR(32), is_read BOOLEAN, " +
+                "sender_id BIGINT, receiver_id BIGINT)");
+        jdbcTemplate.update("INSERT INTO users (id, username) VALUES (?, 'alice'), (?, 'bob')", SENDER_ID, RECEIVER_ID);
+
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO messages (id, content, status, is_read, sender_id, receiver_id) VALUES (?, 'hi', 'SENT', FALSE, ?, ?)",
+                LongStream.rangeClosed(1, TOTAL_MESSAGES)
+                        .mapToObj(id -> new Object[]{id, SENDER_ID, RECEIVER_ID})
+                        .collect(Collectors.toList()));
+
+        // Пачка из середины таблицы, а не подряд идущие ID с начала
+        messageIds = LongStream.range(0, batchSize)
+                .map(i -> 1 + (i * 3) % TOTAL_MESSAGES)
+                .boxed()
+                .collect(Collectors.toList());
+    }
+
+    @Setup(Level.Invocation)
+    public void resetStatuses() {
+        namedJdbcTemplate.update("UPDATE messages SET status = 'SENT', is_read = FALSE WHERE id IN (:ids)",
+                new MapSqlParameterSource("ids", messageIds));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jdbcTemplate.execute("DROP TABLE messages");
+        jdbcTemplate.execute("DROP TABLE users");
+        dataSource.close();
+    }
+
+    @Benchmark
+    public int perIdStatements() {
+        return transactionTemplate.execute(status -> {
+            int updated = 0;
+            for (Long id : messageIds) {
+                Map<String, Object> row = jdbcTemplate.queryForMap(PER_ID_SELECT_SQL, id);
+                if (!"READ".equals(row.get("STATUS"))) {
+                    updated += jdbcTemplate.update(PER_ID_UPDATE_SQL, "READ", true, id);
+                }
+            }
+            return updated;
+        });
+    }
+
+    @Benchmark
+    public int setBasedUpdate() {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("ids", messageIds)
+                .addValue("receiverId", RECEIVER_ID)
+                .addValue("status", "READ")
+                .addValue("lowerStatuses", List.of("SENT", "DELIVERED"));
+
+        return transactionTemplate.execute(status -> {
+            List<Map<String, Object>> candidates = namedJdbcTemplate.queryForList(SET_SELECT_SQL, params);
+            if (candidates.isEmpty()) {
+                return 0;
+            }
+            return namedJdbcTemplate.update(SET_UPDATE_SQL, params);
+        });
+    }
+}
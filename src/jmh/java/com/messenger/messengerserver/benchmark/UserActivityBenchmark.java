@@ -0,0 +1,74 @@
+package com.messenger.messengerserver.benchmark;
+
+import ch.qos.logback.classic.LoggerContext;
+import com.messenger.messengerserver.service.UserActivityService;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Карты активности UserActivityService под конкурентной нагрузкой: isUserInChatWith вызывается
+ * на каждую доставку сообщения, updateUserActivity - на каждое переключение экрана клиентом.
+ * Логирование сервиса на INFO, как в production (debug/trace строки не формируются)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class UserActivityBenchmark {
+
+    @Param({"10000"})
+    public int users;
+
+    private UserActivityService userActivityService;
+    private String[] usernames;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        loggerContext.getLogger(UserActivityService.class).setLevel(ch.qos.logback.classic.Level.INFO);
+
+        userActivityService = new UserActivityService();
+        usernames = new String[users];
+        for (int i = 0; i < users; i++) {
+            usernames[i] = "user" + i;
+        }
+        // Каждый второй в чате с соседом
+        for (int i = 0; i < users; i++) {
+            userActivityService.updateUserActivity(usernames[i],
+                    i % 2 == 0 ? "ChatActivity" : "MainActivity", usernames[(i + 1) % users]);
+        }
+    }
+
+    @Benchmark
+    public boolean isUserInChatWith() {
+        int i = ThreadLocalRandom.current().nextInt(users);
+        return userActivityService.isUserInChatWith(usernames[i], usernames[(i + 1) % users]);
+    }
+
+    @Benchmark
+    public void updateUserActivity() {
+        int i = ThreadLocalRandom.current().nextInt(users);
+        userActivityService.updateUserActivity(usernames[i],
+                i % 2 == 0 ? "ChatActivity" : "MainActivity", usernames[(i + 1) % users]);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public boolean mixedLookup() {
+        return isUserInChatWith();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedUpdate() {
+        updateUserActivity();
+    }
+}
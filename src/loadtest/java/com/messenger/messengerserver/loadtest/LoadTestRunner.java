@@ -0,0 +1,238 @@
+package com.messenger.messengerserver.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.messenger.messengerserver.MessengerApplication;
+import com.messenger.messengerserver.dto.AuthRequest;
+import com.messenger.messengerserver.dto.AuthResponse;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Нагрузочный прогон: N симулированных клиентов логинятся через /api/auth/login, подключаются к /ws,
+ * шлют сообщения случайным собеседникам с заданной частотой и подтверждают DELIVERED/READ.
+ * Итог - пропускная способность и перцентили задержек в консоли и JSON (loadtest.report).
+ *
+ * Без loadtest.target поднимает сервер в этом же процессе с профилем loadtest
+ * (H2 вместо MySQL, simple broker вместо RabbitMQ, нужен локальный Redis).
+ *
+ * Параметры (-D...): loadtest.clients, loadtest.duration-seconds, loadtest.rate-per-client (сообщений/с
+ * на клиента), loadtest.ramp-up-seconds, loadtest.read-batch-size, loadtest.target, loadtest.report
+ */
+public class LoadTestRunner {
+
+    // Не должен попадать под messenger.security.blocked-user-agents (Java-http-client, curl, ...)
+    static final String USER_AGENT = "MessengerLoadTest/1.0";
+
+    private static final String USERNAME_PREFIX = "loadtest-user-";
+    private static final String PASSWORD = "loadtest-password";
+
+    private final int clientCount = Integer.getInteger("loadtest.clients", 1000);
+    private final int durationSeconds = Integer.getInteger("loadtest.duration-seconds", 60);
+    private final double ratePerClient = Double.parseDouble(System.getProperty("loadtest.rate-per-client", "0.2"));
+    private final int rampUpSeconds = Integer.getInteger("loadtest.ramp-up-seconds", 10);
+    private final int readBatchSize = Integer.getInteger("loadtest.read-batch-size", 20);
+    private final String target = System.getProperty("loadtest.target", "");
+    private final String reportPath = System.getProperty("loadtest.report", "target/loadtest-result.json");
+
+    private final LoadTestStats stats = new LoadTestStats();
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    public static void main(String[] args) throws Exception {
+        int status = new LoadTestRunner().run();
+        System.exit(status);
+    }
+
+    private int run() throws Exception {
+        ConfigurableApplicationContext context = null;
+        String baseUrl = target;
+        if (baseUrl.isEmpty()) {
+            context = new SpringApplicationBuilder(MessengerApplication.class)
+                    .profiles("loadtest")
+                    .run();
+            baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            System.out.println("🚀 [LOADTEST] In-process server on " + baseUrl);
+        }
+
+        try {
+            List<SimulatedClient> clients = login(baseUrl);
+            if (clients.size() < 2) {
+                System.err.println("❌ [LOADTEST] Need at least 2 logged in clients, got " + clients.size());
+                return 1;
+            }
+
+            WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+            MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+            converter.setObjectMapper(objectMapper);
+            stompClient.setMessageConverter(converter);
+
+            connect(clients, stompClient, baseUrl.replaceFirst("^http", "ws") + "/ws");
+            long elapsedMs = generateLoad(clients);
+            clients.forEach(SimulatedClient::disconnect);
+            stompClient.stop();
+
+            report(elapsedMs);
+            return 0;
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    /**
+     * Регистрация (409 - пользователь уже есть) и логин всех клиентов параллельно
+     */
+    private List<SimulatedClient> login(String baseUrl) throws InterruptedException {
+        RestTemplate restTemplate = new RestTemplate();
+        restTemplate.getInterceptors().add((request, body, execution) -> {
+            request.getHeaders().set(HttpHeaders.USER_AGENT, USER_AGENT);
+            return execution.execute(request, body);
+        });
+
+        long startedAt = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        List<Future<SimulatedClient>> futures = new ArrayList<>(clientCount);
+        for (int i = 0; i < clientCount; i++) {
+            String username = USERNAME_PREFIX + i;
+            futures.add(executor.submit(() -> {
+                try {
+                    restTemplate.postForEntity(baseUrl + "/api/auth/register",
+                            Map.of("username", username, "password", PASSWORD), String.class);
+                } catch (HttpClientErrorException.Conflict e) {
+                    // Остался с прошлого прогона
+                }
+                AuthResponse auth = restTemplate.postForObject(baseUrl + "/api/auth/login",
+                        new AuthRequest(username, PASSWORD), AuthResponse.class);
+                return new SimulatedClient(username, auth.getAccessToken(), stats, readBatchSize);
+            }));
+        }
+
+        List<SimulatedClient> clients = new ArrayList<>(clientCount);
+        for (Future<SimulatedClient> future : futures) {
+            try {
+                clients.add(future.get());
+            } catch (ExecutionException e) {
+                System.err.println("❌ [LOADTEST] Login failed: " + e.getCause().getMessage());
+            }
+        }
+        executor.shutdown();
+
+        System.out.println("🔑 [LOADTEST] " + clients.size() + "/" + clientCount + " clients logged in in " +
+                (System.currentTimeMillis() - startedAt) + " ms");
+        return clients;
+    }
+
+    /**
+     * Подключения равномерно за loadtest.ramp-up-seconds
+     */
+    private void connect(List<SimulatedClient> clients, WebSocketStompClient stompClient, String wsUrl)
+            throws InterruptedException {
+        long pauseNanos = TimeUnit.SECONDS.toNanos(rampUpSeconds) / clients.size();
+        List<CompletableFuture<?>> connections = new ArrayList<>(clients.size());
+        for (SimulatedClient client : clients) {
+            connections.add(client.connect(stompClient, wsUrl));
+            TimeUnit.NANOSECONDS.sleep(pauseNanos);
+        }
+
+        try {
+            CompletableFuture.allOf(connections.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            // Неудачные подключения уже посчитаны в connectFailures
+        }
+
+        long connected = clients.stream().filter(SimulatedClient::isConnected).count();
+        System.out.println("🔌 [LOADTEST] " + connected + "/" + clients.size() + " clients connected");
+    }
+
+    /**
+     * Каждый клиент шлёт сообщения случайным собеседникам с частотой loadtest.rate-per-client;
+     * READ сбрасываются раз в секунду. После окончания - пауза на доставку хвоста
+     */
+    private long generateLoad(List<SimulatedClient> clients) throws InterruptedException {
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()));
+        long periodMicros = (long) (TimeUnit.SECONDS.toMicros(1) / ratePerClient);
+
+        System.out.println("📨 [LOADTEST] " + clients.size() + " clients x " + ratePerClient + " msg/s for " +
+                durationSeconds + " s");
+        long startedAt = System.currentTimeMillis();
+
+        for (int i = 0; i < clients.size(); i++) {
+            SimulatedClient client = clients.get(i);
+            int self = i;
+            long initialDelay = ThreadLocalRandom.current().nextLong(periodMicros);
+            scheduler.scheduleAtFixedRate(() -> {
+                int partner = ThreadLocalRandom.current().nextInt(clients.size() - 1);
+                if (partner >= self) {
+                    partner++;
+                }
+                client.sendMessage(clients.get(partner).getUsername());
+            }, initialDelay, periodMicros, TimeUnit.MICROSECONDS);
+            scheduler.scheduleAtFixedRate(client::flushReads, 1, 1, TimeUnit.SECONDS);
+        }
+
+        TimeUnit.SECONDS.sleep(durationSeconds);
+        long elapsedMs = System.currentTimeMillis() - startedAt;
+        scheduler.shutdownNow();
+
+        // Хвост: последние сообщения, DELIVERED и READ
+        TimeUnit.SECONDS.sleep(2);
+        clients.forEach(SimulatedClient::flushReads);
+        TimeUnit.SECONDS.sleep(3);
+        return elapsedMs;
+    }
+
+    private void report(long elapsedMs) throws Exception {
+        double seconds = elapsedMs / 1000.0;
+        long sent = stats.sent.sum();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("clients", clientCount);
+        report.put("durationSeconds", seconds);
+        report.put("ratePerClient", ratePerClient);
+        report.put("sent", sent);
+        report.put("sentPerSecond", sent / seconds);
+        report.put("receivedPerSecond", stats.received.getTotalCount() / seconds);
+        report.put("connectFailures", stats.connectFailures.sum());
+        report.put("serverErrors", stats.serverErrors.sum());
+        report.put("transportErrors", stats.transportErrors.sum());
+
+        Map<String, Object> latencies = new LinkedHashMap<>();
+        System.out.println("📊 [LOADTEST] sent=" + sent + String.format(" (%.1f msg/s)", sent / seconds) +
+                ", connectFailures=" + stats.connectFailures.sum() +
+                ", serverErrors=" + stats.serverErrors.sum() +
+                ", transportErrors=" + stats.transportErrors.sum());
+        System.out.println(String.format("%-24s %9s %9s %9s %9s %9s %9s",
+                "latency (ms)", "count", "p50", "p95", "p99", "p99.9", "max"));
+        for (Map.Entry<String, Histogram> entry : stats.latencies().entrySet()) {
+            Map<String, Object> summary = LoadTestStats.summary(entry.getValue());
+            latencies.put(entry.getKey(), summary);
+            System.out.println(String.format("%-24s %9d %9.2f %9.2f %9.2f %9.2f %9.2f", entry.getKey(),
+                    summary.get("count"), summary.get("p50Ms"), summary.get("p95Ms"), summary.get("p99Ms"),
+                    summary.get("p999Ms"), summary.get("maxMs")));
+        }
+        report.put("latencies", latencies);
+
+        File reportFile = new File(reportPath);
+        if (reportFile.getParentFile() != null) {
+            reportFile.getParentFile().mkdirs();
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+        System.out.println("📄 [LOADTEST] Report saved to " + reportFile.getAbsolutePath());
+    }
+}
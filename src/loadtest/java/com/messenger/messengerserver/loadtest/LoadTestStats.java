@@ -0,0 +1,64 @@
+package com.messenger.messengerserver.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики и гистограммы задержек нагрузочного прогона (микросекунды, 3 значащие цифры)
+ */
+public class LoadTestStats {
+
+    private static final long MAX_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    // Подключение: handshake + STOMP CONNECTED
+    final Histogram connect = histogram();
+    // Отправка /app/chat -> эхо SENT отправителю (сообщение записано)
+    final Histogram persisted = histogram();
+    // Отправка -> сообщение у получателя
+    final Histogram received = histogram();
+    // Отправка -> статус DELIVERED у отправителя (/queue/status)
+    final Histogram deliveredAck = histogram();
+    // Отправка -> статус READ у отправителя (пачкой из /app/status/batch)
+    final Histogram readAck = histogram();
+
+    final LongAdder sent = new LongAdder();
+    final LongAdder connectFailures = new LongAdder();
+    final LongAdder serverErrors = new LongAdder();
+    final LongAdder transportErrors = new LongAdder();
+
+    private static Histogram histogram() {
+        return new ConcurrentHistogram(MAX_TRACKABLE_MICROS, 3);
+    }
+
+    static void record(Histogram histogram, long startedAtNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedAtNanos);
+        histogram.recordValue(Math.max(0, Math.min(micros, MAX_TRACKABLE_MICROS)));
+    }
+
+    Map<String, Histogram> latencies() {
+        Map<String, Histogram> latencies = new LinkedHashMap<>();
+        latencies.put("connect", connect);
+        latencies.put("send_to_persisted", persisted);
+        latencies.put("send_to_received", received);
+        latencies.put("send_to_delivered_ack", deliveredAck);
+        latencies.put("send_to_read_ack", readAck);
+        return latencies;
+    }
+
+    static Map<String, Object> summary(Histogram histogram) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getTotalCount());
+        summary.put("meanMs", histogram.getTotalCount() == 0 ? 0.0 : histogram.getMean() / 1000.0);
+        summary.put("p50Ms", histogram.getValueAtPercentile(50.0) / 1000.0);
+        summary.put("p95Ms", histogram.getValueAtPercentile(95.0) / 1000.0);
+        summary.put("p99Ms", histogram.getValueAtPercentile(99.0) / 1000.0);
+        summary.put("p999Ms", histogram.getValueAtPercentile(99.9) / 1000.0);
+        summary.put("maxMs", histogram.getMaxValue() / 1000.0);
+        return summary;
+    }
+}
@@ -0,0 +1,217 @@
+package com.messenger.messengerserver.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.messenger.messengerserver.dto.MessageDto;
+import com.messenger.messengerserver.dto.MessageStatusBatchUpdateDto;
+import com.messenger.messengerserver.dto.MessageStatusUpdateDto;
+import org.springframework.http.HttpHeaders;
+import org.springframework.messaging.simp.stomp.*;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Один пользователь мобильного клиента: STOMP поверх /ws с JWT, как приложение.
+ * Получатель сразу подтверждает DELIVERED (/app/status), READ копит и шлёт пачкой (/app/status/batch).
+ * Время отправки (System.nanoTime) едет в тексте сообщения - задержки считаются в одной JVM
+ */
+public class SimulatedClient extends StompSessionHandlerAdapter {
+
+    static final String CONTENT_PREFIX = "loadtest ";
+
+    private final String username;
+    private final String accessToken;
+    private final LoadTestStats stats;
+    private final int readBatchSize;
+
+    private final Queue<Long> pendingReads = new ConcurrentLinkedQueue<>();
+    private volatile StompSession session;
+
+    SimulatedClient(String username, String accessToken, LoadTestStats stats, int readBatchSize) {
+        this.username = username;
+        this.accessToken = accessToken;
+        this.stats = stats;
+        this.readBatchSize = readBatchSize;
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    boolean isConnected() {
+        StompSession current = session;
+        return current != null && current.isConnected();
+    }
+
+    CompletableFuture<StompSession> connect(WebSocketStompClient stompClient, String wsUrl) {
+        WebSocketHttpHeaders handshakeHeaders = new WebSocketHttpHeaders();
+        handshakeHeaders.set(HttpHeaders.USER_AGENT, LoadTestRunner.USER_AGENT);
+        handshakeHeaders.set(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken);
+
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.set("Authorization", "Bearer " + accessToken);
+
+        long startedAt = System.nanoTime();
+        return stompClient.connectAsync(wsUrl, handshakeHeaders, connectHeaders, this)
+                .whenComplete((connected, error) -> {
+                    if (error != null) {
+                        stats.connectFailures.increment();
+                    } else {
+                        LoadTestStats.record(stats.connect, startedAt);
+                    }
+                });
+    }
+
+    @Override
+    public void afterConnected(StompSession session, StompHeaders connectedHeaders) {
+        this.session = session;
+        session.subscribe("/user/queue/messages", jsonHandler(this::onMessage));
+        session.subscribe("/user/queue/status", jsonHandler(this::onStatus));
+    }
+
+    void sendMessage(String receiverUsername) {
+        MessageDto message = new MessageDto();
+        message.setContent(CONTENT_PREFIX + System.nanoTime());
+        message.setSenderUsername(username);
+        message.setReceiverUsername(receiverUsername);
+        message.setType("TEXT");
+        message.setClientTimestamp(System.currentTimeMillis());
+
+        if (send("/app/chat", message)) {
+            stats.sent.increment();
+        }
+    }
+
+    /**
+     * READ накопленных сообщений одной пачкой (по таймеру раннера или при заполнении пачки)
+     */
+    void flushReads() {
+        List<Long> messageIds = new ArrayList<>();
+        Long messageId;
+        while ((messageId = pendingReads.poll()) != null) {
+            messageIds.add(messageId);
+        }
+        if (!messageIds.isEmpty()) {
+            send("/app/status/batch", new MessageStatusBatchUpdateDto(messageIds, "READ", username));
+        }
+    }
+
+    void disconnect() {
+        StompSession current = session;
+        if (current != null && current.isConnected()) {
+            current.disconnect();
+        }
+    }
+
+    private void onMessage(JsonNode message) {
+        String sender = message.path("senderUsername").asText();
+        String receiver = message.path("receiverUsername").asText();
+        long sentAt = sentAtNanos(message);
+
+        if ("system".equals(sender)) {
+            stats.serverErrors.increment();
+            return;
+        }
+
+        if (username.equals(sender) && !username.equals(receiver)) {
+            // Эхо SENT: сообщение записано
+            if (sentAt > 0) {
+                LoadTestStats.record(stats.persisted, sentAt);
+            }
+            return;
+        }
+
+        if (username.equals(receiver)) {
+            if (sentAt > 0) {
+                LoadTestStats.record(stats.received, sentAt);
+            }
+            long messageId = message.path("id").asLong();
+            send("/app/status", new MessageStatusUpdateDto(messageId, "DELIVERED", username));
+
+            pendingReads.add(messageId);
+            if (pendingReads.size() >= readBatchSize) {
+                flushReads();
+            }
+        }
+    }
+
+    private void onStatus(JsonNode payload) {
+        if (payload.isArray()) {
+            payload.forEach(this::onStatusUpdate);
+        } else {
+            onStatusUpdate(payload);
+        }
+    }
+
+    private void onStatusUpdate(JsonNode message) {
+        long sentAt = sentAtNanos(message);
+        if (sentAt <= 0) {
+            return;
+        }
+        String status = message.path("status").asText();
+        if ("DELIVERED".equals(status)) {
+            LoadTestStats.record(stats.deliveredAck, sentAt);
+        } else if ("READ".equals(status)) {
+            LoadTestStats.record(stats.readAck, sentAt);
+        }
+    }
+
+    private static long sentAtNanos(JsonNode message) {
+        String content = message.path("content").asText("");
+        if (!content.startsWith(CONTENT_PREFIX)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(content.substring(CONTENT_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // WebSocket сессия не допускает параллельной записи: отправка по таймеру и подтверждения из потока чтения
+    private synchronized boolean send(String destination, Object payload) {
+        StompSession current = session;
+        if (current == null || !current.isConnected()) {
+            return false;
+        }
+        try {
+            current.send(destination, payload);
+            return true;
+        } catch (Exception e) {
+            stats.transportErrors.increment();
+            return false;
+        }
+    }
+
+    @Override
+    public void handleException(StompSession session, StompCommand command, StompHeaders headers,
+                                byte[] payload, Throwable exception) {
+        stats.serverErrors.increment();
+    }
+
+    @Override
+    public void handleTransportError(StompSession session, Throwable exception) {
+        stats.transportErrors.increment();
+    }
+
+    private static StompFrameHandler jsonHandler(Consumer<JsonNode> consumer) {
+        return new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return JsonNode.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                consumer.accept((JsonNode) payload);
+            }
+        };
+    }
+}
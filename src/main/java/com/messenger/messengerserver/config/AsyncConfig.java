@@ -0,0 +1,54 @@
+package com.messenger.messengerserver.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class AsyncConfig {
+
+    /**
+     * Пул для доставки получателю (presence + WebSocket + FCM),
+     * чтобы входящий STOMP поток не ждал Redis и Firebase.
+     * При переполнении очереди задача отклоняется (см. MessageDeliveryService.dispatchPersisted):
+     * вызывающий поток - flusher write-behind, сам он применяет только подтверждение и read-модели,
+     * доставка получателю откладывается до досылки при подключении.
+     */
+    @Bean(name = "messageDispatchExecutor")
+    public ThreadPoolTaskExecutor messageDispatchExecutor(
+            @Value("${messenger.dispatch.core-pool-size:8}") int corePoolSize,
+            @Value("${messenger.dispatch.max-pool-size:32}") int maxPoolSize,
+            @Value("${messenger.dispatch.queue-capacity:10000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("msg-dispatch-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Пул для повторной отправки недоставленных сообщений при подключении,
+     * чтобы выгрузка большого backlog'а не задерживала CONNECT.
+     */
+    @Bean(name = "messageReplayExecutor")
+    public ThreadPoolTaskExecutor messageReplayExecutor(
+            @Value("${messenger.replay.pool-size:4}") int poolSize,
+            @Value("${messenger.replay.queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("msg-replay-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+}
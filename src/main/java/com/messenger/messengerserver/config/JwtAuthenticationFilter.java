@@ -1,6 +1,8 @@
 package com.messenger.messengerserver.config;
 
 import com.messenger.messengerserver.service.CustomUserDetailsService;
+import com.messenger.messengerserver.service.MessagingMetrics;
+import com.messenger.messengerserver.service.RateLimiter;
 import com.messenger.messengerserver.service.UserPresenceService;
 import com.messenger.messengerserver.util.JwtUtil;
 import jakarta.servlet.FilterChain;
@@ -8,6 +10,8 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -15,14 +19,11 @@ import org.springframework.security.web.authentication.WebAuthenticationDetailsS
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    private static final Logger log = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
+
     private final JwtUtil jwtUtil;
     private final CustomUserDetailsService userDetailsService;
     private final UserPresenceService userPresenceService;  // 👈 ДОБАВИТЬ
@@ -30,69 +31,30 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     // ===== ВРЕМЕННАЯ ЗАЩИТА (пока сервер на домашнем ПК) =====
 
-    // Полностью доверенные IP (без проверки JWT - только для отладки)
-    private static final Set<String> TRUSTED_IPS = new HashSet<>(Arrays.asList(
-            "127.0.0.1",           // localhost
-            "0:0:0:0:0:0:0:1",    // IPv6 localhost
-            "93.189.231.32"        // Ваш VPS сервер (TURN)
-    ));
-
-    // Доверенные IP диапазоны (локальная сеть)
-    private static final Set<String> TRUSTED_IP_RANGES = new HashSet<>(Arrays.asList(
-            "192.168.", "10.0.", "172.16.", "172.17.", "172.18.", "172.19.",
-            "172.20.", "172.21.", "172.22.", "172.23.", "172.24.", "172.25.",
-            "172.26.", "172.27.", "172.28.", "172.29.", "172.30.", "172.31."
-    ));
-
-    // Заблокированные User-Agent (боты и сканеры)
-    private static final Set<String> BLOCKED_USER_AGENTS = new HashSet<>(Arrays.asList(
-            "zgrab", "Go-http-client", "curl", "wget", "python-requests",
-            "Java-http-client", "masscan", "nmap", "nikto", "sqlmap",
-            "dirbuster", "gobuster", "ffuf", "hydra", "medusa", "burp", "zap"
-    ));
-
-    // Заблокированные пути (чувствительные файлы)
-    private static final Set<String> BLOCKED_PATHS = new HashSet<>(Arrays.asList(
-            ".git", ".env", ".aws", "credentials", ".yml", ".yaml",
-            ".properties", ".xml", ".json", ".sql", ".dump", ".bak",
-            ".old", ".save", ".dist", ".local", ".dev", ".test",
-            "wp-admin", "wp-login", "phpmyadmin", "mysql", "adminer"
-    ));
-
-    // Rate limiting для неавторизованных запросов (для ботов)
-    private final ConcurrentMap<String, AtomicInteger> unauthorizedAttempts = new ConcurrentHashMap<>();
-    private static final int MAX_UNAUTHORIZED_PER_MINUTE = 10;
-
-    // Rate limiting для авторизованных запросов (ваши пользователи)
-    private final ConcurrentMap<String, AtomicInteger> authorizedAttempts = new ConcurrentHashMap<>();
-    private static final int MAX_AUTHORIZED_PER_MINUTE = 500;
-
-    // ScheduledExecutor для очистки
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-
-    public JwtAuthenticationFilter(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService, UserPresenceService userPresenceService) {
+    // Опасные пути, User-Agent ботов, доверенные сети - скомпилированы заранее (messenger.security.*)
+    private final RequestClassifier requestClassifier;
+
+    // Rate limiting: неавторизованные - по IP (боты, брутфорс), авторизованные - по пользователю
+    // и с запасом по IP (NAT). Скользящее окно, общее для всех узлов - см. RateLimiter
+    private final RateLimiter rateLimiter;
+    private final MessagingMetrics messagingMetrics;
+    private final int maxUnauthorizedPerIp;
+    private final int maxAuthorizedPerUser;
+    private final int maxAuthorizedPerIp;
+
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService,
+                                   UserPresenceService userPresenceService, RequestClassifier requestClassifier,
+                                   RateLimiter rateLimiter, MessagingMetrics messagingMetrics,
+                                   int maxUnauthorizedPerIp, int maxAuthorizedPerUser, int maxAuthorizedPerIp) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
         this.userPresenceService = userPresenceService;
-
-        // Планируем очистку карт каждую минуту
-        scheduler.scheduleAtFixedRate(() -> {
-            unauthorizedAttempts.clear();
-            authorizedAttempts.clear();
-        }, 1, 1, TimeUnit.MINUTES);
-
-        // Добавляем shutdown hook для корректного завершения
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            scheduler.shutdown();
-            try {
-                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                    scheduler.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                scheduler.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
-        }));
+        this.requestClassifier = requestClassifier;
+        this.rateLimiter = rateLimiter;
+        this.messagingMetrics = messagingMetrics;
+        this.maxUnauthorizedPerIp = maxUnauthorizedPerIp;
+        this.maxAuthorizedPerUser = maxAuthorizedPerUser;
+        this.maxAuthorizedPerIp = maxAuthorizedPerIp;
     }
 
     @Override
@@ -106,14 +68,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         String userAgent = request.getHeader("User-Agent");
 
         // ===== 1. БЛОКИРОВКА ОПАСНЫХ ПУТЕЙ (всегда) =====
-        String pathLower = path.toLowerCase();
-        for (String blocked : BLOCKED_PATHS) {
-            if (pathLower.contains(blocked.toLowerCase())) {
-                System.out.println("[SECURITY] 🚫 Блокирован опасный путь: " + path + " от IP: " + clientIp);
-                response.setStatus(HttpServletResponse.SC_FORBIDDEN);
-                response.getWriter().write("Access denied");
-                return;
-            }
+        if (requestClassifier.isBlockedPath(path)) {
+            log.warn("[SECURITY] 🚫 Блокирован опасный путь: {} от IP: {}", path, clientIp);
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            response.getWriter().write("Access denied");
+            return;
         }
 
         // ===== 2. ПУБЛИЧНЫЕ ЭНДПОИНТЫ (без аутентификации) =====
@@ -128,8 +87,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         if (isPublicEndpoint) {
             // Даже на публичных эндпоинтах блокируем явных ботов
-            if (isBotUserAgent(userAgent)) {
-                System.out.println("[SECURITY] 🚫 Бот заблокирован на публичном эндпоинте: " + userAgent);
+            if (requestClassifier.isBotUserAgent(userAgent)) {
+                log.info("[SECURITY] 🚫 Бот заблокирован на публичном эндпоинте: {}", userAgent);
                 response.setStatus(HttpServletResponse.SC_FORBIDDEN);
                 return;
             }
@@ -144,35 +103,39 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
             jwt = authorizationHeader.substring(7);
-            try {
-                username = jwtUtil.extractUsername(jwt);
-            } catch (Exception e) {
-                System.out.println("[SECURITY] Ошибка JWT от IP: " + clientIp + " - " + e.getMessage());
+            // Подпись, срок и subject - одной проверкой (с кэшем проверенных токенов)
+            username = jwtUtil.validateAndGetUsername(jwt);
+            if (username == null) {
+                log.debug("[SECURITY] Ошибка JWT от IP: {}", clientIp);
             }
         }
 
         // ===== 4. ЕСТЬ ВАЛИДНЫЙ JWT =====
-        if (username != null && jwtUtil.validateToken(jwt)) {
-            // Rate limiting для авторизованных
-            if (isRateLimitExceeded(authorizedAttempts, clientIp, MAX_AUTHORIZED_PER_MINUTE)) {
-                System.out.println("[SECURITY] ⚠️ Rate limit для авторизованного IP: " + clientIp);
+        if (username != null) {
+            // Rate limiting для авторизованных: IP и пользователь одним запросом в Redis.
+            // Запрос, отбитый по IP, не расходует лимит пользователя (иначе чужой IP выедает его квоту)
+            int rejectedBy = rateLimiter.tryAcquire("ip:" + clientIp, maxAuthorizedPerIp,
+                    "user:" + username, maxAuthorizedPerUser);
+            if (rejectedBy != 0) {
+                messagingMetrics.rateLimitRejected(rejectedBy == 1 ? "ip" : "user");
+                log.warn("[SECURITY] ⚠️ Rate limit для {} с IP: {}", username, clientIp);
                 response.setStatus(429);
                 return;
             }
 
-            // 👇 ДОБАВИТЬ ПРОВЕРКУ СЕССИИ
+            // Проверка сессии - из near-cache UserPresenceService, без запроса в Redis
             String sessionId = request.getHeader("X-Session-Id");
             if (sessionId != null && !sessionId.isEmpty()) {
                 boolean isActive = userPresenceService.isSessionActive(username, sessionId);
                 if (!isActive) {
-                    System.out.println("[SECURITY] 🚫 Сессия не активна для " + username);
+                    log.debug("[SECURITY] 🚫 Сессия не активна для {}", username);
                     response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
                     response.setHeader("X-Session-Terminated", "true");
                     response.getWriter().write("Session terminated by another device");
                     return;
                 }
             } else {
-                System.out.println("[SECURITY] ⚠️ Нет X-Session-Id заголовка для " + username);
+                log.debug("[SECURITY] ⚠️ Нет X-Session-Id заголовка для {}", username);
             }
 
             try {
@@ -182,33 +145,34 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(authToken);
 
-                System.out.println("[SECURITY] ✅ Аутентифицирован: " + username + " с IP: " + clientIp);
+                log.debug("[SECURITY] ✅ Аутентифицирован: {} с IP: {}", username, clientIp);
                 chain.doFilter(request, response);
                 return;
             } catch (Exception e) {
-                System.out.println("[SECURITY] Ошибка загрузки пользователя: " + e.getMessage());
+                log.warn("[SECURITY] Ошибка загрузки пользователя: {}", e.getMessage());
             }
         }
 
         // ===== 5. НЕТ ВАЛИДНОГО JWT =====
 
         // Rate limiting для неавторизованных (защита от брутфорса)
-        if (isRateLimitExceeded(unauthorizedAttempts, clientIp, MAX_UNAUTHORIZED_PER_MINUTE)) {
-            System.out.println("[SECURITY] 🚫 Rate limit для неавторизованного IP: " + clientIp);
+        if (!rateLimiter.tryAcquire("anon:" + clientIp, maxUnauthorizedPerIp)) {
+            messagingMetrics.rateLimitRejected("anon");
+            log.warn("[SECURITY] 🚫 Rate limit для неавторизованного IP: {}", clientIp);
             response.setStatus(429); // TOO MANY REQUESTS
             return;
         }
 
         // Блокировка ботов по User-Agent
-        if (isBotUserAgent(userAgent)) {
-            System.out.println("[SECURITY] 🚫 Бот заблокирован: " + userAgent + " от IP: " + clientIp);
+        if (requestClassifier.isBotUserAgent(userAgent)) {
+            log.info("[SECURITY] 🚫 Бот заблокирован: {} от IP: {}", userAgent, clientIp);
             response.setStatus(HttpServletResponse.SC_FORBIDDEN);
             return;
         }
 
         // Для доверенных IP (локальная сеть) - возвращаем 401, но не блокируем
-        if (isTrustedIp(clientIp)) {
-            System.out.println("[SECURITY] ⚠️ Доверенный IP без JWT: " + clientIp + " URI: " + path);
+        if (requestClassifier.isTrustedIp(clientIp)) {
+            log.debug("[SECURITY] ⚠️ Доверенный IP без JWT: {} URI: {}", clientIp, path);
             response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
             response.setHeader("WWW-Authenticate", "Bearer");
             response.getWriter().write("Authentication required");
@@ -216,47 +180,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         // ===== 6. ВСЕ ОСТАЛЬНЫЕ - БЛОКИРУЕМ (боты, сканеры) =====
-        System.out.println("[SECURITY] 🚫 ЗАБЛОКИРОВАН неизвестный запрос:");
-        System.out.println("[SECURITY] IP: " + clientIp);
-        System.out.println("[SECURITY] URI: " + path);
-        System.out.println("[SECURITY] User-Agent: " + userAgent);
+        log.info("[SECURITY] 🚫 ЗАБЛОКИРОВАН неизвестный запрос: IP: {} URI: {} User-Agent: {}",
+                clientIp, path, userAgent);
 
         response.setStatus(HttpServletResponse.SC_FORBIDDEN);
         response.getWriter().write("Access denied");
     }
 
-    /**
-     * Проверка, является ли IP доверенным
-     */
-    private boolean isTrustedIp(String ip) {
-        if (TRUSTED_IPS.contains(ip)) return true;
-        for (String range : TRUSTED_IP_RANGES) {
-            if (ip.startsWith(range)) return true;
-        }
-        return false;
-    }
-
-    /**
-     * Проверка, является ли User-Agent ботом
-     */
-    private boolean isBotUserAgent(String userAgent) {
-        if (userAgent == null) return true;
-        String uaLower = userAgent.toLowerCase();
-        for (String blocked : BLOCKED_USER_AGENTS) {
-            if (uaLower.contains(blocked.toLowerCase())) return true;
-        }
-        return false;
-    }
-
-    /**
-     * Проверка, превышен ли лимит запросов
-     * @return true если лимит превышен, false если в пределах лимита
-     */
-    private boolean isRateLimitExceeded(ConcurrentMap<String, AtomicInteger> map, String key, int max) {
-        AtomicInteger counter = map.computeIfAbsent(key, k -> new AtomicInteger(0));
-        return counter.incrementAndGet() > max;
-    }
-
     /**
      * Получение реального IP адреса клиента с учетом прокси
      */
@@ -0,0 +1,24 @@
+package com.messenger.messengerserver.config;
+
+import com.messenger.messengerserver.util.SnowflakeIdGenerator;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class PersistenceConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(PersistenceConfig.class);
+
+    // У каждого узла кластера должен быть свой node-id (0..1023), иначе ID сообщений могут совпасть
+    @Value("${messenger.node-id:0}")
+    private long nodeId;
+
+    @PostConstruct
+    public void configureIdGenerator() {
+        SnowflakeIdGenerator.setNodeId(nodeId);
+        log.info("✅ Snowflake ID generator configured, node-id: {}", nodeId);
+    }
+}
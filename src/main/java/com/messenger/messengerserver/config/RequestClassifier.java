@@ -0,0 +1,56 @@
+package com.messenger.messengerserver.config;
+
+import com.messenger.messengerserver.util.AhoCorasickMatcher;
+import com.messenger.messengerserver.util.CidrMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Правила JwtAuthenticationFilter, скомпилированные один раз при старте:
+ * опасные пути и User-Agent ботов - автоматы Aho–Corasick (один проход, без учёта регистра),
+ * доверенные адреса - CIDR бор. Списки - messenger.security.* в application.properties
+ */
+@Component
+public class RequestClassifier {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestClassifier.class);
+
+    private final AhoCorasickMatcher blockedPaths;
+    private final AhoCorasickMatcher blockedUserAgents;
+    private final CidrMatcher trustedNetworks;
+
+    public RequestClassifier(@Value("${messenger.security.blocked-paths}") List<String> blockedPaths,
+                             @Value("${messenger.security.blocked-user-agents}") List<String> blockedUserAgents,
+                             @Value("${messenger.security.trusted-ips}") List<String> trustedIps,
+                             @Value("${messenger.security.trusted-cidrs}") List<String> trustedCidrs) {
+        this.blockedPaths = new AhoCorasickMatcher(blockedPaths);
+        this.blockedUserAgents = new AhoCorasickMatcher(blockedUserAgents);
+
+        List<String> trusted = new ArrayList<>(trustedIps);
+        trusted.addAll(trustedCidrs);
+        this.trustedNetworks = new CidrMatcher(trusted);
+
+        log.info("🛡️ [SECURITY] Rules compiled: {} paths, {} user agents, {} trusted networks",
+                blockedPaths.size(), blockedUserAgents.size(), trusted.size());
+    }
+
+    public boolean isBlockedPath(String path) {
+        return blockedPaths.containsAny(path);
+    }
+
+    /**
+     * Без User-Agent - тоже бот
+     */
+    public boolean isBotUserAgent(String userAgent) {
+        return userAgent == null || blockedUserAgents.containsAny(userAgent);
+    }
+
+    public boolean isTrustedIp(String ip) {
+        return trustedNetworks.matches(ip);
+    }
+}
@@ -1,8 +1,11 @@
 package com.messenger.messengerserver.config;
 
 import com.messenger.messengerserver.service.CustomUserDetailsService;
+import com.messenger.messengerserver.service.MessagingMetrics;
+import com.messenger.messengerserver.service.RateLimiter;
 import com.messenger.messengerserver.service.UserPresenceService;
 import com.messenger.messengerserver.util.JwtUtil;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -25,15 +28,31 @@ public class SecurityConfig {
     private final JwtUtil jwtUtil;
     private final CorsConfigurationSource corsConfigurationSource;
     private final UserPresenceService userPresenceService;  // 👈 ДОБАВИТЬ
+    private final RateLimiter rateLimiter;
+    private final RequestClassifier requestClassifier;
+    private final MessagingMetrics messagingMetrics;
 
+    @Value("${messenger.ratelimit.unauthorized-per-ip:10}")
+    private int maxUnauthorizedPerIp;
+
+    @Value("${messenger.ratelimit.authorized-per-user:500}")
+    private int maxAuthorizedPerUser;
+
+    @Value("${messenger.ratelimit.authorized-per-ip:2000}")
+    private int maxAuthorizedPerIp;
 
     public SecurityConfig(CustomUserDetailsService userDetailsService,
                           JwtUtil jwtUtil,
-                          CorsConfigurationSource corsConfigurationSource, UserPresenceService userPresenceService) {
+                          CorsConfigurationSource corsConfigurationSource, UserPresenceService userPresenceService,
+                          RateLimiter rateLimiter, RequestClassifier requestClassifier,
+                          MessagingMetrics messagingMetrics) {
         this.userDetailsService = userDetailsService;
         this.jwtUtil = jwtUtil;
         this.corsConfigurationSource = corsConfigurationSource;
         this.userPresenceService = userPresenceService;
+        this.rateLimiter = rateLimiter;
+        this.requestClassifier = requestClassifier;
+        this.messagingMetrics = messagingMetrics;
     }
 
     @Bean
@@ -74,6 +93,7 @@ public class SecurityConfig {
 
     @Bean
     public JwtAuthenticationFilter jwtAuthenticationFilter() {
-        return new JwtAuthenticationFilter(jwtUtil, userDetailsService, userPresenceService);  // 👈 ИЗМЕНИТЬ
+        return new JwtAuthenticationFilter(jwtUtil, userDetailsService, userPresenceService, requestClassifier, rateLimiter, messagingMetrics,
+                maxUnauthorizedPerIp, maxAuthorizedPerUser, maxAuthorizedPerIp);
     }
 }
\ No newline at end of file
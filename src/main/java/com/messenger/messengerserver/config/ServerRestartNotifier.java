@@ -1,8 +1,6 @@
 package com.messenger.messengerserver.config;
 
-import com.messenger.messengerserver.model.User;
-import com.messenger.messengerserver.service.FcmService;
-import com.messenger.messengerserver.service.UserService;
+import com.messenger.messengerserver.service.ReconnectBroadcastService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
@@ -14,14 +12,15 @@ import java.util.List;
 public class ServerRestartNotifier {
 
     @Autowired
-    private FcmService fcmService;
+    private ReconnectBroadcastService reconnectBroadcastService;
 
     @EventListener(ApplicationReadyEvent.class)
     public void onServerStart() throws Exception {
 //        Thread.sleep(5000);
         List<String> onlineUsers = ShutdownMemory.load();
         if (!onlineUsers.isEmpty()) {
-            fcmService.sendReconnectCommandBatch(onlineUsers);
+            // Рассылка в фоне: старт приложения не ждёт отправки тысяч уведомлений
+            reconnectBroadcastService.broadcastAsync(onlineUsers);
         }
     }
 }
\ No newline at end of file
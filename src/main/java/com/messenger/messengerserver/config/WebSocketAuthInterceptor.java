@@ -45,8 +45,8 @@ public class WebSocketAuthInterceptor implements ChannelInterceptor {
                     String jwt = authHeader.substring(7);
                     try {
                         // Проверяем валидность токена (включая expiration)
-                        if (jwtUtil.validateToken(jwt)) {
-                            username = jwtUtil.getUsernameFromToken(jwt);
+                        username = jwtUtil.validateAndGetUsername(jwt);
+                        if (username != null) {
                             isValidToken = true;
                             System.out.println("✅ WebSocket valid token for: " + username);
                         } else {
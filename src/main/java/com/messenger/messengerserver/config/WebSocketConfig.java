@@ -1,6 +1,9 @@
 package com.messenger.messengerserver.config;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
@@ -20,11 +23,38 @@ import java.util.Map;
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private static final Logger log = LoggerFactory.getLogger(WebSocketConfig.class);
+
+    // convertAndSendToUser разрешает адресата по локальному реестру сессий. Если пользователь
+    // подключён к другому узлу, сообщение уходит в этот топик, и узел с его сессией доставляет его.
+    // Реестр пользователей узлы публикуют друг другу, так что каждый узел видит всех подключённых.
+    private static final String UNRESOLVED_USER_DESTINATION = "/topic/unresolved-user-destination";
+    private static final String USER_REGISTRY_DESTINATION = "/topic/simp-user-registry";
+
     @Autowired
     private WebSocketAuthInterceptor webSocketAuthInterceptor;
 
+    @Value("${spring.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${spring.websocket.send-time-limit:20000}")
+    private int sendTimeLimit;
+
+    // false - встроенный simple broker вместо RabbitMQ (нагрузочный стенд, один узел)
+    @Value("${messenger.broker.relay-enabled:true}")
+    private boolean relayEnabled;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
+        config.setApplicationDestinationPrefixes("/app");
+        config.setUserDestinationPrefix("/user");
+
+        if (!relayEnabled) {
+            config.enableSimpleBroker("/topic", "/queue", "/exchange");
+            log.warn("⚠️ In-memory STOMP broker configured (relay disabled, single node only)");
+            return;
+        }
+
         config.enableStompBrokerRelay("/topic", "/queue", "/exchange")
                 .setRelayHost("localhost")
                 .setRelayPort(61613)
@@ -33,12 +63,11 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setSystemLogin("guest")
                 .setSystemPasscode("guest")
                 .setVirtualHost("/")
+                .setUserDestinationBroadcast(UNRESOLVED_USER_DESTINATION)
+                .setUserRegistryBroadcast(USER_REGISTRY_DESTINATION)
                 .setAutoStartup(true);
 
-        config.setApplicationDestinationPrefixes("/app");
-        config.setUserDestinationPrefix("/user");
-
-        System.out.println("✅ RabbitMQ STOMP broker configured for production (без heartbeat)");
+        log.info("✅ RabbitMQ STOMP broker configured for production (без heartbeat)");
     }
 
     @Override
@@ -92,8 +121,8 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Override
     public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
         registration.setMessageSizeLimit(128 * 1024)
-                .setSendBufferSizeLimit(512 * 1024)
-                .setSendTimeLimit(20000)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setSendTimeLimit(sendTimeLimit)
                 .setTimeToFirstMessage(30000);
     }
 }
\ No newline at end of file
@@ -1,12 +1,16 @@
 package com.messenger.messengerserver.config;
 
-import com.messenger.messengerserver.dto.MessageDto;
-import com.messenger.messengerserver.mapper.MessageMapper;
-import com.messenger.messengerserver.model.Message;
-import com.messenger.messengerserver.service.MessageService;
+import com.messenger.messengerserver.dto.PresenceSnapshotDto;
+import com.messenger.messengerserver.service.MessagingMetrics;
+import com.messenger.messengerserver.service.PresenceBroadcastService;
+import com.messenger.messengerserver.service.UndeliveredReplayService;
 import com.messenger.messengerserver.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
@@ -19,6 +23,8 @@ import java.util.Map;
 @Component
 public class WebSocketEventListener {
 
+    private static final Logger log = LoggerFactory.getLogger(WebSocketEventListener.class);
+
     @Autowired
     private UserService userService;
 
@@ -26,13 +32,20 @@ public class WebSocketEventListener {
     private SimpMessagingTemplate messagingTemplate;
 
     @Autowired
-    private MessageService messageService;
+    private UndeliveredReplayService undeliveredReplayService;
+
+    @Autowired
+    private PresenceBroadcastService presenceBroadcastService;
 
     @Autowired
-    private MessageMapper messageMapper;
+    private MessagingMetrics messagingMetrics;
 
     @EventListener
     public void handleWebSocketConnectListener(SessionConnectedEvent event) {
+        messagingMetrics.sessionConnect().record(() -> onConnected(event));
+    }
+
+    private void onConnected(SessionConnectedEvent event) {
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
 
         String username = null;
@@ -59,32 +72,36 @@ public class WebSocketEventListener {
                 List<String> sessionValues = nativeHeaders.get("session");
                 if (sessionValues != null && !sessionValues.isEmpty()) {
                     rabbitSessionId = sessionValues.get(0);
-                    System.out.println("[SESSION] ✅ Получен RabbitMQ sessionId из nativeHeaders: " + rabbitSessionId);
+                    log.debug("[SESSION] ✅ Получен RabbitMQ sessionId из nativeHeaders: {}", rabbitSessionId);
                 }
             }
         } catch (Exception e) {
-            System.err.println("[SESSION] ❌ Ошибка получения RabbitMQ sessionId: " + e.getMessage());
+            log.warn("[SESSION] ❌ Ошибка получения RabbitMQ sessionId: {}", e.getMessage());
         }
 
         // Если не получили - используем internalSessionId
         if (rabbitSessionId == null) {
             rabbitSessionId = internalSessionId;
-            System.out.println("[SESSION] ⚠️ Используем internalSessionId как rabbitSessionId: " + rabbitSessionId);
+            log.debug("[SESSION] ⚠️ Используем internalSessionId как rabbitSessionId: {}", rabbitSessionId);
         }
 
         if (username != null) {
             userService.userConnected(username, internalSessionId, rabbitSessionId);
-            broadcastOnlineUsers();
+            presenceBroadcastService.onJoined(username);
             sendPersonalOnlineUsers(username);
-            sendUndeliveredMessages(username);
+            sendUndeliveredMessages(username, acceptsBatchReplay(headerAccessor));
 
-            System.out.println("✅ User CONNECTED: " + username +
-                    " (internalSession: " + internalSessionId + ", rabbitSession: " + rabbitSessionId + ")");
+            log.info("✅ User CONNECTED: {} (internalSession: {}, rabbitSession: {})",
+                    username, internalSessionId, rabbitSessionId);
         }
     }
 
     @EventListener
     public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
+        messagingMetrics.sessionDisconnect().record(() -> onDisconnected(event));
+    }
+
+    private void onDisconnected(SessionDisconnectEvent event) {
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
 
         String username = null;
@@ -100,58 +117,39 @@ public class WebSocketEventListener {
         String internalSessionId = headerAccessor.getSessionId();
 
         if (username != null) {
-            userService.userDisconnected(username, internalSessionId);
-            broadcastOnlineUsers();
-            System.out.println("🔴 User DISCONNECTED: " + username +
-                    " (internalSession: " + internalSessionId + ")");
+            if (userService.userDisconnected(username, internalSessionId)) {
+                presenceBroadcastService.onLeft(username);
+            }
+            log.info("🔴 User DISCONNECTED: {} (internalSession: {})", username, internalSessionId);
         }
     }
 
-    private void broadcastOnlineUsers() {
+    // Снапшот со seq - новому клиенту, дальше он получает только дельты /topic/presence.delta
+    private void sendPersonalOnlineUsers(String username) {
         try {
-            List<String> onlineUsers = userService.getOnlineUsers();
-            messagingTemplate.convertAndSend("/topic/online.users", onlineUsers);
-            System.out.println("📡 [BROADCAST] Online users: " + onlineUsers.size() + " users");
+            PresenceSnapshotDto snapshot = presenceBroadcastService.getSnapshot();
+            messagingTemplate.convertAndSendToUser(username, "/queue/presence.snapshot", snapshot);
+            messagingTemplate.convertAndSendToUser(username, "/queue/online.users", snapshot.getOnlineUsers());
+            log.debug("📡 [PERSONAL] Sent online users to {}: {} users (seq {})",
+                    username, snapshot.getOnlineUsers().size(), snapshot.getSeq());
         } catch (Exception e) {
-            System.err.println("❌ Error broadcasting online users: " + e.getMessage());
+            log.error("❌ Error sending personal online users to {}: {}", username, e.getMessage());
         }
     }
 
-    private void sendPersonalOnlineUsers(String username) {
-        try {
-            List<String> onlineUsers = userService.getOnlineUsers();
-            messagingTemplate.convertAndSendToUser(username, "/queue/online.users", onlineUsers);
-            System.out.println("📡 [PERSONAL] Sent online users to " + username +
-                    ": " + onlineUsers.size() + " users");
-        } catch (Exception e) {
-            System.err.println("❌ Error sending personal online users to " + username +
-                    ": " + e.getMessage());
-        }
+    // Досылка идёт в отдельном пуле страницами - CONNECT не ждёт выгрузки backlog'а
+    private void sendUndeliveredMessages(String username, boolean acceptsBatch) {
+        undeliveredReplayService.replayAsync(username, acceptsBatch);
     }
 
-    private void sendUndeliveredMessages(String username) {
-        try {
-            List<Message> undeliveredMessages = messageService.getUndeliveredMessages(username);
-
-            if (!undeliveredMessages.isEmpty()) {
-                System.out.println("📨 Sending " + undeliveredMessages.size() +
-                        " undelivered messages to " + username);
-
-                for (Message message : undeliveredMessages) {
-                    MessageDto messageDto = messageMapper.toDto(
-                            messageService.getMessageWithUsers(message.getId())
-                    );
-
-                    messagingTemplate.convertAndSendToUser(
-                            username,
-                            "/queue/messages",
-                            messageDto
-                    );
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("❌ Error sending undelivered messages to " + username +
-                    ": " + e.getMessage());
+    // Заголовки клиента - в исходном CONNECT, который лежит внутри CONNECTED
+    private boolean acceptsBatchReplay(StompHeaderAccessor connectedAccessor) {
+        Object connectMessage = connectedAccessor.getHeader(SimpMessageHeaderAccessor.CONNECT_MESSAGE_HEADER);
+        if (!(connectMessage instanceof Message<?> message)) {
+            return false;
         }
+        String value = StompHeaderAccessor.wrap(message)
+                .getFirstNativeHeader(UndeliveredReplayService.BATCH_CAPABILITY_HEADER);
+        return Boolean.parseBoolean(value);
     }
-}
\ No newline at end of file
+}
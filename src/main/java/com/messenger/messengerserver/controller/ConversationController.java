@@ -0,0 +1,39 @@
+package com.messenger.messengerserver.controller;
+
+import com.messenger.messengerserver.dto.ConversationDto;
+import com.messenger.messengerserver.service.ConversationSummaryService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/conversations")
+@CrossOrigin(origins = "*")
+public class ConversationController {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationController.class);
+
+    private static final int MAX_CONVERSATIONS = 500;
+
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+
+    // Список чатов одним запросом: последнее сообщение, непрочитанные, статус собеседника
+    @GetMapping
+    public ResponseEntity<List<ConversationDto>> getConversations(@AuthenticationPrincipal UserDetails currentUser,
+                                                                  @RequestParam(defaultValue = "100") int limit) {
+        try {
+            int pageSize = Math.max(1, Math.min(limit, MAX_CONVERSATIONS));
+            return ResponseEntity.ok(conversationSummaryService.getConversations(currentUser.getUsername(), pageSize));
+        } catch (Exception e) {
+            log.error("❌ Error loading conversations: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+}
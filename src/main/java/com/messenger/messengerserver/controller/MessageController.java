@@ -1,14 +1,22 @@
 package com.messenger.messengerserver.controller;
 
+import com.messenger.messengerserver.dto.ConversationPageDto;
 import com.messenger.messengerserver.dto.MessageDto;
 import com.messenger.messengerserver.dto.MessageStatusBatchUpdateDto;
 import com.messenger.messengerserver.dto.MessageStatusUpdateDto;
 import com.messenger.messengerserver.mapper.MessageMapper;
 import com.messenger.messengerserver.model.Message;
-import com.messenger.messengerserver.model.MessageStatus;
+import com.messenger.messengerserver.service.ConversationSummaryService;
 import com.messenger.messengerserver.service.FcmService;
+import com.messenger.messengerserver.service.MessageDeliveryService;
+import com.messenger.messengerserver.service.MessageLatencyTracker;
 import com.messenger.messengerserver.service.MessageService;
+import com.messenger.messengerserver.service.MessagingMetrics;
+import com.messenger.messengerserver.service.UnreadCounterService;
 import com.messenger.messengerserver.service.UserService;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.MessageMapping;
@@ -16,10 +24,9 @@ import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 @RestController
@@ -27,8 +34,7 @@ import java.util.stream.Collectors;
 @CrossOrigin(origins = "*")
 public class MessageController {
 
-    private static final DateTimeFormatter TIME_FORMATTER =
-            DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+    private static final Logger log = LoggerFactory.getLogger(MessageController.class);
 
     @Autowired
     private MessageService messageService;
@@ -45,105 +51,83 @@ public class MessageController {
     @Autowired
     private MessageMapper messageMapper;
 
-    private String getTimestamp() {
-        return LocalDateTime.now().format(TIME_FORMATTER);
-    }
+    @Autowired
+    private MessageDeliveryService messageDeliveryService;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+
+    @Autowired
+    private MessagingMetrics messagingMetrics;
+
+    @Autowired
+    private MessageLatencyTracker latencyTracker;
 
     @MessageMapping("/chat")
     public void processMessage(@Payload MessageDto messageDto) {
         try {
-            System.out.println("[" + getTimestamp() + "] WebSocket message received from: " + messageDto.getSenderUsername() +
-                    " to: " + messageDto.getReceiverUsername());
-
-            // 1. Сохраняем сообщение в БД со статусом SENT
-            Message message = messageService.saveMessage(
+            log.debug("WebSocket message received from: {} to: {}",
+                    messageDto.getSenderUsername(), messageDto.getReceiverUsername());
+
+            // 1. Ставим сообщение в write-behind буфер со статусом SENT.
+            // 2. После коммита batch'а - подтверждение ОТПРАВИТЕЛЮ и доставка получателю.
+            // Future завершает поток write-behind: в нём только замер и передача в пул доставки
+            MessageLatencyTracker.Trace trace = latencyTracker.startTrace(messageDto);
+            Timer.Sample persistSample = Timer.start();
+            messageService.ingestMessage(
                     messageDto.getContent(),
                     messageDto.getSenderUsername(),
                     messageDto.getReceiverUsername()
-            );
-
-            message.setStatus(MessageStatus.SENT);
-            message.setIsRead(false);
-            message = messageService.updateMessage(message);
-
-            Message fullMessage = messageService.getMessageWithUsers(message.getId());
-            MessageDto responseDto = messageMapper.toDto(fullMessage);
-
-            // 2. Отправляем подтверждение ОТПРАВИТЕЛЮ (статус SENT)
-            messagingTemplate.convertAndSendToUser(
-                    messageDto.getSenderUsername(),
-                    "/queue/messages",
-                    responseDto
-            );
-
-            // 3. Проверяем, в чате ли получатель с отправителем
-            boolean isReceiverInChat = userService.isUserInChatWith(
-                    messageDto.getReceiverUsername(),
-                    messageDto.getSenderUsername()
-            );
-
-            // 4. Пытаемся доставить ПОЛУЧАТЕЛЮ
-            boolean isReceiverOnline = userService.isUserOnline(messageDto.getReceiverUsername());
-
-            if (isReceiverOnline) {
-                // Если онлайн - шлем сообщение, клиент сам ответит DELIVERED
-                messagingTemplate.convertAndSendToUser(
-                        messageDto.getReceiverUsername(),
-                        "/queue/messages",
-                        responseDto
-                );
-                System.out.println("[" + getTimestamp() + "] 📨 Message sent to online receiver: " + messageDto.getReceiverUsername());
-            }
-
-            // 5. FCM отправляем ВСЕГДА, КРОМЕ случая когда получатель в чате с отправителем
-            if (!isReceiverInChat) {
-                try {
-                    fcmService.sendNewMessageNotification(
-                            messageDto.getSenderUsername(),
-                            messageDto.getReceiverUsername(),
-                            messageDto.getContent(),
-                            message.getId()
-                    );
-                    System.out.println("[" + getTimestamp() + "] 📱 FCM sent to receiver: " + messageDto.getReceiverUsername() +
-                            " (in chat: " + isReceiverInChat + ")");
-                } catch (Exception fcmEx) {
-                    System.err.println("[" + getTimestamp() + "] ❌ FCM error: " + fcmEx.getMessage());
+            ).whenComplete((responseDto, error) -> {
+                persistSample.stop(messagingMetrics.persist().outcome(error));
+                if (error != null) {
+                    // Редкий путь - ошибка уходит отправителю сразу, минуя пул доставки
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    log.error("❌ Error persisting message: {}", cause.getMessage());
+                    sendErrorToSender(messageDto, cause);
+                    return;
                 }
-            } else {
-                System.out.println("[" + getTimestamp() + "] 📱 FCM skipped - receiver is in chat with sender");
-            }
 
-            System.out.println("[" + getTimestamp() + "] Message saved with status: SENT for sender: " + messageDto.getSenderUsername());
+                latencyTracker.onPersisted(trace, responseDto);
+                messageDeliveryService.dispatchPersisted(responseDto);
+                log.debug("Message saved with status: SENT for sender: {}", messageDto.getSenderUsername());
+            });
 
         } catch (Exception e) {
-            System.err.println("[" + getTimestamp() + "] ❌ Error: " + e.getMessage());
-            e.printStackTrace();
-
-            MessageDto errorDto = new MessageDto();
-            errorDto.setContent("Error sending message: " + e.getMessage());
-            errorDto.setSenderUsername("system");
-            errorDto.setReceiverUsername(messageDto.getSenderUsername());
-            errorDto.setType("SYSTEM");
-
-            messagingTemplate.convertAndSendToUser(
-                    messageDto.getSenderUsername(),
-                    "/queue/messages",
-                    errorDto
-            );
+            log.error("❌ Error processing message", e);
+            sendErrorToSender(messageDto, e);
         }
     }
 
+    private void sendErrorToSender(MessageDto messageDto, Throwable error) {
+        MessageDto errorDto = new MessageDto();
+        errorDto.setContent("Error sending message: " + error.getMessage());
+        errorDto.setSenderUsername("system");
+        errorDto.setReceiverUsername(messageDto.getSenderUsername());
+        errorDto.setType("SYSTEM");
+
+        messagingTemplate.convertAndSendToUser(
+                messageDto.getSenderUsername(),
+                "/queue/messages",
+                errorDto
+        );
+    }
+
     @MessageMapping("/call")
     public void processCallSignal(@Payload Map<String, Object> callSignal) {
         try {
-            System.out.println("[" + getTimestamp() + "] 📞 Call signal received: " + callSignal);
+            log.debug("📞 Call signal received: {}", callSignal);
 
             String type = (String) callSignal.get("type");
             String from = (String) callSignal.get("from");
             String to = (String) callSignal.get("to");
 
             if (type == null || from == null || to == null) {
-                System.err.println("[" + getTimestamp() + "] ❌ Invalid call signal format");
+                log.warn("❌ Invalid call signal format");
                 return;
             }
 
@@ -153,54 +137,60 @@ public class MessageController {
                     callSignal
             );
 
-            System.out.println("[" + getTimestamp() + "] 📞 Call signal forwarded to: " + to);
+            log.debug("📞 Call signal forwarded to: {}", to);
 
             if ("offer".equals(type)) {
                 try {
                     fcmService.sendIncomingCallNotification(from, to);
-                    System.out.println("[" + getTimestamp() + "] 📞 FCM call notification sent to: " + to);
+                    log.debug("📞 FCM call notification sent to: {}", to);
                 } catch (Exception fcmEx) {
-                    System.err.println("[" + getTimestamp() + "] ❌ Error sending call FCM: " + fcmEx.getMessage());
+                    log.error("❌ Error sending call FCM: {}", fcmEx.getMessage());
                 }
             }
 
         } catch (Exception e) {
-            System.err.println("[" + getTimestamp() + "] ❌ Error processing call signal: " + e.getMessage());
-            e.printStackTrace();
+            log.error("❌ Error processing call signal", e);
         }
     }
 
     @PostMapping("/send")
     public ResponseEntity<MessageDto> sendMessage(@RequestBody MessageDto messageDto) {
         try {
-            Message message = messageService.saveMessage(
-                    messageDto.getContent(),
-                    messageDto.getSenderUsername(),
-                    messageDto.getReceiverUsername()
-            );
-
-            message.setStatus(MessageStatus.SENT);
-            message = messageService.updateMessage(message);
+            MessageLatencyTracker.Trace trace = latencyTracker.startTrace(messageDto);
+            Timer.Sample persistSample = Timer.start();
+            MessageDto responseDto;
+            try {
+                responseDto = messageService.ingestMessage(
+                        messageDto.getContent(),
+                        messageDto.getSenderUsername(),
+                        messageDto.getReceiverUsername()
+                ).join();
+            } catch (RuntimeException e) {
+                persistSample.stop(messagingMetrics.persist().failure());
+                throw e;
+            }
+            persistSample.stop(messagingMetrics.persist().success());
+            latencyTracker.onPersisted(trace, responseDto);
 
-            MessageDto responseDto = messageMapper.toDto(message);
+            unreadCounterService.onMessageStored(responseDto.getReceiverUsername(), responseDto.getSenderUsername());
+            conversationSummaryService.onMessageStored(responseDto);
 
-            System.out.println("[" + getTimestamp() + "] 🔵 [FCM CHECK] Before calling fcmService.sendNewMessageNotification");
-            System.out.println("   Sender: " + messageDto.getSenderUsername());
-            System.out.println("   Receiver: " + messageDto.getReceiverUsername());
+            log.debug("🔵 [FCM CHECK] Before calling fcmService.sendNewMessageNotification: {} -> {}",
+                    messageDto.getSenderUsername(), messageDto.getReceiverUsername());
 
             fcmService.sendNewMessageNotification(
                     messageDto.getSenderUsername(),
                     messageDto.getReceiverUsername(),
                     messageDto.getContent(),
-                    message.getId()
+                    responseDto.getId()
             );
 
-            System.out.println("[" + getTimestamp() + "] ✅ [FCM CHECK] After fcmService call");
+            log.debug("✅ [FCM CHECK] After fcmService call");
 
             return ResponseEntity.ok(responseDto);
 
         } catch (Exception e) {
-            System.err.println("[" + getTimestamp() + "] ❌ Error sending message: " + e.getMessage());
+            log.error("❌ Error sending message: {}", e.getMessage());
             return ResponseEntity.badRequest().build();
         }
     }
@@ -222,6 +212,21 @@ public class MessageController {
         }
     }
 
+    @GetMapping("/conversation/page")
+    public ResponseEntity<ConversationPageDto> getConversationPage(
+            @RequestParam String user1,
+            @RequestParam String user2,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "50") int limit) {
+
+        try {
+            return ResponseEntity.ok(messageService.getConversationPage(user1, user2, before, after, limit));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @GetMapping("/last/{user1}/{user2}")
     public ResponseEntity<MessageDto> getLastMessage(
             @PathVariable String user1,
@@ -273,18 +278,28 @@ public class MessageController {
         }
     }
 
+    @GetMapping("/unread/counts")
+    public ResponseEntity<Map<String, Long>> getUnreadCounts(@RequestParam String username) {
+        try {
+            return ResponseEntity.ok(messageService.getUnreadCountsByConversation(username));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @MessageMapping("/status")
     public void updateMessageStatus(@Payload MessageStatusUpdateDto statusUpdate) {
         try {
-            System.out.println("[" + getTimestamp() + "] 📊 Status update received: messageId=" + statusUpdate.getMessageId() +
-                    " status=" + statusUpdate.getStatus() +
-                    " from=" + statusUpdate.getUsername());
+            log.debug("📊 Status update received: messageId={} status={} from={}",
+                    statusUpdate.getMessageId(), statusUpdate.getStatus(), statusUpdate.getUsername());
 
-            MessageDto responseDto = messageService.processStatusUpdate(statusUpdate);
+            MessageDto responseDto = messagingMetrics.statusUpdate()
+                    .record(() -> messageService.processStatusUpdate(statusUpdate));
 
             if (responseDto != null) {
-                System.out.println("[" + getTimestamp() + "] 📤 Sending status to " + responseDto.getSenderUsername() +
-                        " on /queue/status: " + responseDto.getStatus());
+                latencyTracker.onStatusChanged(List.of(responseDto));
+                log.debug("📤 Sending status to {} on /queue/status: {}",
+                        responseDto.getSenderUsername(), responseDto.getStatus());
 
                 // Пытаемся отправить через WebSocket
                 messagingTemplate.convertAndSendToUser(
@@ -303,30 +318,29 @@ public class MessageController {
                     );
                 }
 
-                System.out.println("[" + getTimestamp() + "] ✅ Status updated for message " + statusUpdate.getMessageId() +
-                        " to " + responseDto.getStatus());
+                log.debug("✅ Status updated for message {} to {}", statusUpdate.getMessageId(), responseDto.getStatus());
             } else {
-                System.out.println("[" + getTimestamp() + "] ⚠️ No status change for message " + statusUpdate.getMessageId());
+                log.debug("⚠️ No status change for message {}", statusUpdate.getMessageId());
             }
 
         } catch (Exception e) {
-            System.err.println("[" + getTimestamp() + "] ❌ Error updating message status: " + e.getMessage());
-            e.printStackTrace();
+            log.error("❌ Error updating message status", e);
         }
     }
 
     @PostMapping("/status")
     public ResponseEntity<?> updateMessageStatusViaHttp(@RequestBody MessageStatusUpdateDto statusUpdate) {
         try {
-            System.out.println("[" + getTimestamp() + "] 📊 HTTP Status update received: messageId=" + statusUpdate.getMessageId() +
-                    " status=" + statusUpdate.getStatus() +
-                    " from=" + statusUpdate.getUsername());
+            log.debug("📊 HTTP Status update received: messageId={} status={} from={}",
+                    statusUpdate.getMessageId(), statusUpdate.getStatus(), statusUpdate.getUsername());
 
-            MessageDto responseDto = messageService.processStatusUpdate(statusUpdate);
+            MessageDto responseDto = messagingMetrics.statusUpdate()
+                    .record(() -> messageService.processStatusUpdate(statusUpdate));
 
             if (responseDto != null) {
-                System.out.println("[" + getTimestamp() + "] 📤 Sending status to " + responseDto.getSenderUsername() +
-                        " on /queue/status: " + responseDto.getStatus());
+                latencyTracker.onStatusChanged(List.of(responseDto));
+                log.debug("📤 Sending status to {} on /queue/status: {}",
+                        responseDto.getSenderUsername(), responseDto.getStatus());
 
                 // 👇 Пытаемся отправить через WebSocket
                 messagingTemplate.convertAndSendToUser(
@@ -338,7 +352,7 @@ public class MessageController {
                 // 👇 Проверяем онлайн ли отправитель
                 if (!userService.isUserOnline(responseDto.getSenderUsername())) {
                     // Если офлайн - отправляем через FCM
-                    System.out.println("[" + getTimestamp() + "] 📱 Sender offline, sending status via FCM");
+                    log.debug("📱 Sender offline, sending status via FCM");
                     fcmService.sendDeliveredConfirmation(
                             responseDto.getSenderUsername(),
                             responseDto.getId(),
@@ -346,17 +360,16 @@ public class MessageController {
                     );
                 }
 
-                System.out.println("[" + getTimestamp() + "] ✅ Status updated via HTTP for message " +
-                        statusUpdate.getMessageId() + " to " + responseDto.getStatus());
+                log.debug("✅ Status updated via HTTP for message {} to {}",
+                        statusUpdate.getMessageId(), responseDto.getStatus());
                 return ResponseEntity.ok().build();
             } else {
-                System.out.println("[" + getTimestamp() + "] ⚠️ No status change for message " + statusUpdate.getMessageId());
+                log.debug("⚠️ No status change for message {}", statusUpdate.getMessageId());
                 return ResponseEntity.ok().build();
             }
 
         } catch (Exception e) {
-            System.err.println("[" + getTimestamp() + "] ❌ Error updating message status via HTTP: " + e.getMessage());
-            e.printStackTrace();
+            log.error("❌ Error updating message status via HTTP", e);
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
@@ -364,13 +377,14 @@ public class MessageController {
     @MessageMapping("/status/batch")
     public void updateMessageStatusBatch(@Payload MessageStatusBatchUpdateDto batchUpdate) {
         try {
-            System.out.println("[" + getTimestamp() + "] 📊 BATCH status update received: " +
-                    batchUpdate.getMessageIds().size() + " messages, status=" + batchUpdate.getStatus() +
-                    " from=" + batchUpdate.getUsername());
+            log.debug("📊 BATCH status update received: {} messages, status={} from={}",
+                    batchUpdate.getMessageIds().size(), batchUpdate.getStatus(), batchUpdate.getUsername());
 
-            List<MessageDto> updatedMessages = messageService.processStatusBatchUpdate(batchUpdate);
+            List<MessageDto> updatedMessages = messagingMetrics.statusBatchUpdate()
+                    .record(() -> messageService.processStatusBatchUpdate(batchUpdate));
 
             if (!updatedMessages.isEmpty()) {
+                latencyTracker.onStatusChanged(updatedMessages);
                 Map<String, List<MessageDto>> bySender = updatedMessages.stream()
                         .collect(Collectors.groupingBy(MessageDto::getSenderUsername));
 
@@ -378,8 +392,8 @@ public class MessageController {
                     String senderUsername = entry.getKey();
                     List<MessageDto> messagesForSender = entry.getValue();
 
-                    System.out.println("[" + getTimestamp() + "] 📤 Sending " + messagesForSender.size() +
-                            " status updates to " + senderUsername + " on /queue/status");
+                    log.debug("📤 Sending {} status updates to {} on /queue/status",
+                            messagesForSender.size(), senderUsername);
 
                     messagingTemplate.convertAndSendToUser(
                             senderUsername,
@@ -388,15 +402,13 @@ public class MessageController {
                     );
                 }
 
-                System.out.println("[" + getTimestamp() + "] ✅ BATCH status updated for " +
-                        updatedMessages.size() + " messages");
+                log.debug("✅ BATCH status updated for {} messages", updatedMessages.size());
             } else {
-                System.out.println("[" + getTimestamp() + "] ⚠️ No messages updated in batch");
+                log.debug("⚠️ No messages updated in batch");
             }
 
         } catch (Exception e) {
-            System.err.println("[" + getTimestamp() + "] ❌ Error processing batch status update: " + e.getMessage());
-            e.printStackTrace();
+            log.error("❌ Error processing batch status update", e);
         }
     }
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.messenger.messengerserver.controller;
 
+import com.messenger.messengerserver.dto.PresenceSnapshotDto;
+import com.messenger.messengerserver.service.PresenceBroadcastService;
 import com.messenger.messengerserver.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -20,6 +22,9 @@ public class OnlineUsersController {
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Autowired
+    private PresenceBroadcastService presenceBroadcastService;
+
     // WebSocket endpoint для запроса онлайн пользователей
     @MessageMapping("/users/online")
     public void getOnlineUsers() {
@@ -54,6 +59,16 @@ public class OnlineUsersController {
         }
     }
 
+    // Снапшот для ресинхронизации: клиент применяет дельты /topic/presence.delta с seq больше снапшота
+    @GetMapping("/online/snapshot")
+    public ResponseEntity<PresenceSnapshotDto> getOnlineSnapshot() {
+        try {
+            return ResponseEntity.ok(presenceBroadcastService.getSnapshot());
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     // УДАЛЯЕМ этот метод - он больше не нужен
     // @GetMapping("/with-status")
     // public ResponseEntity<List<com.messenger.messengerserver.model.User>> getUsersWithOnlineStatus() {
@@ -18,6 +18,7 @@ import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @RestController
@@ -35,9 +36,8 @@ public class UserController {
     private UserPresenceService userPresenceService;
 
     // УЛУЧШЕННАЯ конвертация с деталями (без счетчика устройств)
-    private UserWithStatusDTO convertUserToDTO(User user) {
+    private UserWithStatusDTO convertUserToDTO(User user, boolean isOnline) {
         String username = user.getUsername();
-        boolean isOnline = userService.isUserOnline(username);
         String lastSeenText;
 
         if (isOnline) {
@@ -67,19 +67,18 @@ public class UserController {
     public ResponseEntity<List<UserWithStatusDTO>> getUsers() {
         try {
             List<User> users = userService.getAllUsers();
+            Set<String> onlineUsernames = resolveOnline(users);
 
             // Статистика перед отправкой
             int totalUsers = users.size();
-            long onlineCount = users.stream()
-                    .filter(user -> userService.isUserOnline(user.getUsername()))
-                    .count();
+            long onlineCount = onlineUsernames.size();
 
             System.out.println("📊 User stats: " + totalUsers + " total, " +
                     onlineCount + " online, " +
                     (totalUsers - onlineCount) + " offline");
 
             List<UserWithStatusDTO> usersWithStatus = users.stream()
-                    .map(this::convertUserToDTO)
+                    .map(user -> convertUserToDTO(user, onlineUsernames.contains(user.getUsername())))
                     .collect(Collectors.toList());
 
             return ResponseEntity.ok(usersWithStatus);
@@ -93,11 +92,12 @@ public class UserController {
     public ResponseEntity<List<UserWithStatusDTO>> searchUsers(@RequestParam String query) {
         try {
             List<User> users = userService.searchUsers(query);
+            Set<String> onlineUsernames = resolveOnline(users);
 
             System.out.println("🔍 Search for '" + query + "': found " + users.size() + " users");
 
             List<UserWithStatusDTO> usersWithStatus = users.stream()
-                    .map(this::convertUserToDTO)
+                    .map(user -> convertUserToDTO(user, onlineUsernames.contains(user.getUsername())))
                     .collect(Collectors.toList());
 
             return ResponseEntity.ok(usersWithStatus);
@@ -107,6 +107,13 @@ public class UserController {
         }
     }
 
+    // Присутствие всей страницы одним запросом к Redis (вместо 2 GET на пользователя)
+    private Set<String> resolveOnline(List<User> users) {
+        return userService.getOnlineAmong(users.stream()
+                .map(User::getUsername)
+                .collect(Collectors.toList()));
+    }
+
     @GetMapping("/{username}")
     public ResponseEntity<UserDto> getUser(@PathVariable String username) {
         try {
@@ -0,0 +1,35 @@
+package com.messenger.messengerserver.dto;
+
+public class ConversationDto {
+    private String partnerUsername;
+    private String partnerDisplayName;
+    private String partnerAvatarUrl;
+    private boolean partnerOnline;
+    private String partnerLastSeenText; // "online" или "Был в 15:30"
+    private MessageDto lastMessage;
+    private long unreadCount;
+
+    public ConversationDto() {}
+
+    // Getters and Setters
+    public String getPartnerUsername() { return partnerUsername; }
+    public void setPartnerUsername(String partnerUsername) { this.partnerUsername = partnerUsername; }
+
+    public String getPartnerDisplayName() { return partnerDisplayName; }
+    public void setPartnerDisplayName(String partnerDisplayName) { this.partnerDisplayName = partnerDisplayName; }
+
+    public String getPartnerAvatarUrl() { return partnerAvatarUrl; }
+    public void setPartnerAvatarUrl(String partnerAvatarUrl) { this.partnerAvatarUrl = partnerAvatarUrl; }
+
+    public boolean isPartnerOnline() { return partnerOnline; }
+    public void setPartnerOnline(boolean partnerOnline) { this.partnerOnline = partnerOnline; }
+
+    public String getPartnerLastSeenText() { return partnerLastSeenText; }
+    public void setPartnerLastSeenText(String partnerLastSeenText) { this.partnerLastSeenText = partnerLastSeenText; }
+
+    public MessageDto getLastMessage() { return lastMessage; }
+    public void setLastMessage(MessageDto lastMessage) { this.lastMessage = lastMessage; }
+
+    public long getUnreadCount() { return unreadCount; }
+    public void setUnreadCount(long unreadCount) { this.unreadCount = unreadCount; }
+}
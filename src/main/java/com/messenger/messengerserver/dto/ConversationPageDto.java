@@ -0,0 +1,32 @@
+package com.messenger.messengerserver.dto;
+
+import java.util.List;
+
+public class ConversationPageDto {
+    private List<MessageDto> messages; // по возрастанию id (старые сверху)
+    private Long oldestId;             // курсор для следующей страницы истории: ?before=oldestId
+    private Long newestId;             // курсор для догрузки новых: ?after=newestId
+    private boolean hasMore;           // есть ли ещё сообщения в направлении запроса
+
+    public ConversationPageDto() {}
+
+    public ConversationPageDto(List<MessageDto> messages, Long oldestId, Long newestId, boolean hasMore) {
+        this.messages = messages;
+        this.oldestId = oldestId;
+        this.newestId = newestId;
+        this.hasMore = hasMore;
+    }
+
+    // Getters and Setters
+    public List<MessageDto> getMessages() { return messages; }
+    public void setMessages(List<MessageDto> messages) { this.messages = messages; }
+
+    public Long getOldestId() { return oldestId; }
+    public void setOldestId(Long oldestId) { this.oldestId = oldestId; }
+
+    public Long getNewestId() { return newestId; }
+    public void setNewestId(Long newestId) { this.newestId = newestId; }
+
+    public boolean isHasMore() { return hasMore; }
+    public void setHasMore(boolean hasMore) { this.hasMore = hasMore; }
+}
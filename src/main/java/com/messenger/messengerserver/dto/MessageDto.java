@@ -1,5 +1,7 @@
 package com.messenger.messengerserver.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.time.LocalDateTime;
 
 public class MessageDto {
@@ -13,6 +15,14 @@ public class MessageDto {
     // 👇 НОВОЕ ПОЛЕ
     private String status; // "SENT", "DELIVERED", "READ"
 
+    // Время отправки на клиенте (epoch ms) - для замера задержки от клиента до сервера
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long clientTimestamp;
+
+    // ID трассировки - только у сообщений, попавших в выборку MessageLatencyTracker
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String traceId;
+
     // Конструкторы
     public MessageDto() {}
 
@@ -53,4 +63,10 @@ public class MessageDto {
     // 👇 NEW getter/setter
     public String getStatus() { return status; }
     public void setStatus(String status) { this.status = status; }
+
+    public Long getClientTimestamp() { return clientTimestamp; }
+    public void setClientTimestamp(Long clientTimestamp) { this.clientTimestamp = clientTimestamp; }
+
+    public String getTraceId() { return traceId; }
+    public void setTraceId(String traceId) { this.traceId = traceId; }
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.messenger.messengerserver.dto;
+
+import java.util.List;
+
+public class PresenceDeltaDto {
+    private long seq;              // глобальный номер (Redis INCR); пропуск номера - клиент запрашивает снапшот
+    private List<String> joined;   // подключились за окно
+    private List<String> left;     // отключились за окно
+    private long timestamp;
+
+    public PresenceDeltaDto() {}
+
+    public PresenceDeltaDto(long seq, List<String> joined, List<String> left, long timestamp) {
+        this.seq = seq;
+        this.joined = joined;
+        this.left = left;
+        this.timestamp = timestamp;
+    }
+
+    // Getters and Setters
+    public long getSeq() { return seq; }
+    public void setSeq(long seq) { this.seq = seq; }
+
+    public List<String> getJoined() { return joined; }
+    public void setJoined(List<String> joined) { this.joined = joined; }
+
+    public List<String> getLeft() { return left; }
+    public void setLeft(List<String> left) { this.left = left; }
+
+    public long getTimestamp() { return timestamp; }
+    public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+}
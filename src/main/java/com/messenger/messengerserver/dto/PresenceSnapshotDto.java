@@ -0,0 +1,22 @@
+package com.messenger.messengerserver.dto;
+
+import java.util.List;
+
+public class PresenceSnapshotDto {
+    private long seq;                 // применять дельты с seq больше этого
+    private List<String> onlineUsers;
+
+    public PresenceSnapshotDto() {}
+
+    public PresenceSnapshotDto(long seq, List<String> onlineUsers) {
+        this.seq = seq;
+        this.onlineUsers = onlineUsers;
+    }
+
+    // Getters and Setters
+    public long getSeq() { return seq; }
+    public void setSeq(long seq) { this.seq = seq; }
+
+    public List<String> getOnlineUsers() { return onlineUsers; }
+    public void setOnlineUsers(List<String> onlineUsers) { this.onlineUsers = onlineUsers; }
+}
@@ -24,6 +24,27 @@ public class MessageMapper {
         return dto;
     }
 
+    /**
+     * Преобразование без обращения к ленивым sender/receiver -
+     * usernames уже известны вызывающему коду
+     */
+    public MessageDto toDto(Message message, String senderUsername, String receiverUsername) {
+        if (message == null) {
+            return null;
+        }
+
+        MessageDto dto = new MessageDto();
+        dto.setId(message.getId());
+        dto.setContent(message.getContent());
+        dto.setTimestamp(message.getTimestamp());
+        dto.setIsRead(message.getIsRead());
+        dto.setSenderUsername(senderUsername);
+        dto.setReceiverUsername(receiverUsername);
+        dto.setType(message.getType() != null ? message.getType().toString() : "TEXT");
+        dto.setStatus(message.getStatus() != null ? message.getStatus().toString() : "SENT");
+        return dto;
+    }
+
     // Можно добавить обратное преобразование, если понадобится
     public Message toEntity(MessageDto dto) {
         if (dto == null) {
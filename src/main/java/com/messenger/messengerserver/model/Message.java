@@ -1,15 +1,24 @@
 package com.messenger.messengerserver.model;
 
+import com.messenger.messengerserver.util.SnowflakeIdGenerator;
 import jakarta.persistence.*;
+import org.hibernate.annotations.GenericGenerator;
 
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        // Keyset-пагинация истории: WHERE conversation_key = ? AND id < ? ORDER BY id DESC
+        @Index(name = "idx_messages_conversation_id", columnList = "conversation_key, id"),
+        // Досылка недоставленных при подключении: WHERE receiver_id = ? AND status = 'SENT' AND id > ?
+        @Index(name = "idx_messages_receiver_status_id", columnList = "receiver_id, status, id")
+})
 public class Message {
 
+    // ID генерируется до INSERT (не IDENTITY), чтобы вставки шли JDBC batch'ами
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "message_snowflake")
+    @GenericGenerator(name = "message_snowflake", type = SnowflakeIdGenerator.class)
     private Long id;
 
     @Column(nullable = false, length = 2000)
@@ -34,6 +43,10 @@ public class Message {
     @JoinColumn(name = "receiver_id")
     private User receiver;
 
+    // Нормализованный ключ диалога "меньший_id_большийId" - одинаков для обоих направлений
+    @Column(name = "conversation_key", length = 64)
+    private String conversationKey;
+
 
     // Конструкторы
     public Message() {
@@ -47,6 +60,17 @@ public class Message {
         this.receiver = receiver;
     }
 
+    public static String conversationKey(Long userId1, Long userId2) {
+        return Math.min(userId1, userId2) + "_" + Math.max(userId1, userId2);
+    }
+
+    @PrePersist
+    void fillConversationKey() {
+        if (conversationKey == null && sender != null && receiver != null) {
+            conversationKey = conversationKey(sender.getId(), receiver.getId());
+        }
+    }
+
     // Getters and Setters
     public Long getId() {
         return id;
@@ -113,6 +137,14 @@ public class Message {
         this.status = status;
     }
 
+    public String getConversationKey() {
+        return conversationKey;
+    }
+
+    public void setConversationKey(String conversationKey) {
+        this.conversationKey = conversationKey;
+    }
+
     @Override
     public String toString() {
         return "Message{id=" + id + ", content='" + content + "', from=" +
@@ -8,6 +8,7 @@ import java.util.List;
 
 @Entity
 @Table(name = "users")
+@EntityListeners(UserCredentialsListener.class)
 public class User {
 
     @Id
@@ -21,6 +22,11 @@ public class User {
     @Column(nullable = false)
     private String password;
 
+    // Пароль на момент загрузки - чтобы отличить смену пароля от прочих UPDATE (lastSeen, online...)
+    @JsonIgnore
+    @Transient
+    private String loadedPassword;
+
     @Column(name = "fcm_token")
     private String fcmToken;
 
@@ -90,6 +96,15 @@ public class User {
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
 
+    @PostLoad
+    @PostPersist
+    void rememberLoadedPassword() { this.loadedPassword = password; }
+
+    @JsonIgnore
+    public boolean isPasswordChanged() {
+        return loadedPassword != null && !loadedPassword.equals(password);
+    }
+
     // УДАЛЯЕМ @PreUpdate - логика проще:
     // lastSeen устанавливается только когда пользователь отключается
 }
\ No newline at end of file
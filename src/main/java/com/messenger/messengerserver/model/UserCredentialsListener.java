@@ -0,0 +1,38 @@
+package com.messenger.messengerserver.model;
+
+import com.messenger.messengerserver.service.CustomUserDetailsService;
+import com.messenger.messengerserver.util.AfterCommit;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+
+/**
+ * Сброс закэшированного principal при смене пароля или удалении пользователя.
+ * Создаётся Hibernate через контейнер Spring - зависимости внедряются, @Lazy разрывает цикл с EntityManagerFactory.
+ * Post-колбэки вызываются при flush, до коммита: сброс раньше коммита дал бы параллельному запросу
+ * перечитать и закэшировать старый пароль, поэтому evict (и публикация в user.credentials) - через AfterCommit
+ */
+public class UserCredentialsListener {
+
+    @Lazy
+    @Autowired
+    private CustomUserDetailsService userDetailsService;
+
+    @PostUpdate
+    public void onUpdate(User user) {
+        if (user.isPasswordChanged()) {
+            evictAfterCommit(user.getUsername());
+            user.rememberLoadedPassword();
+        }
+    }
+
+    @PostRemove
+    public void onRemove(User user) {
+        evictAfterCommit(user.getUsername());
+    }
+
+    private void evictAfterCommit(String username) {
+        AfterCommit.run(() -> userDetailsService.evict(username));
+    }
+}
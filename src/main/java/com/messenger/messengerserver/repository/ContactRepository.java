@@ -16,6 +16,10 @@ public interface ContactRepository extends JpaRepository<Contact, Long> {
     @Query("SELECT c.contact FROM Contact c WHERE c.user = :user")
     List<User> findContactsByUser(@Param("user") User user);
 
+    // Обратный индекс: у кого пользователь в контактах (кому слать его статус)
+    @Query("SELECT c.user.username FROM Contact c WHERE c.contact.username = :username")
+    List<String> findUsernamesHavingContact(@Param("username") String username);
+
     // Проверить, есть ли уже контакт
     boolean existsByUserAndContact(User user, User contact);
 
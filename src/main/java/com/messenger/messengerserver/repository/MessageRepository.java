@@ -2,11 +2,17 @@ package com.messenger.messengerserver.repository;
 
 import com.messenger.messengerserver.model.Message;
 import com.messenger.messengerserver.model.MessageStatus;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -45,4 +51,125 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
             "ORDER BY m.timestamp ASC")
     List<Message> findByReceiverUsernameAndStatus(@Param("username") String username,
                                                   @Param("status") MessageStatus status);
-}
\ No newline at end of file
+
+    // 👇 Keyset-пагинация по индексу (conversation_key, id): страница до курсора, новые первыми
+    @Query("SELECT m FROM Message m " +
+            "JOIN FETCH m.sender " +
+            "JOIN FETCH m.receiver " +
+            "WHERE m.conversationKey = :conversationKey AND m.id < :beforeId " +
+            "ORDER BY m.id DESC")
+    List<Message> findConversationPageBefore(@Param("conversationKey") String conversationKey,
+                                             @Param("beforeId") Long beforeId,
+                                             Pageable pageable);
+
+    // 👇 Страница после курсора (догрузка новых), старые первыми
+    @Query("SELECT m FROM Message m " +
+            "JOIN FETCH m.sender " +
+            "JOIN FETCH m.receiver " +
+            "WHERE m.conversationKey = :conversationKey AND m.id > :afterId " +
+            "ORDER BY m.id ASC")
+    List<Message> findConversationPageAfter(@Param("conversationKey") String conversationKey,
+                                            @Param("afterId") Long afterId,
+                                            Pageable pageable);
+
+    @Query("SELECT m FROM Message m " +
+            "JOIN FETCH m.sender " +
+            "JOIN FETCH m.receiver " +
+            "WHERE m.conversationKey = :conversationKey " +
+            "ORDER BY m.id ASC")
+    List<Message> findConversationByKey(@Param("conversationKey") String conversationKey);
+
+    // 👇 То же по участникам - пока у старых сообщений не заполнен conversation_key
+    @Query("SELECT m FROM Message m " +
+            "JOIN FETCH m.sender " +
+            "JOIN FETCH m.receiver " +
+            "WHERE ((m.sender.id = :userId1 AND m.receiver.id = :userId2) " +
+            "OR (m.sender.id = :userId2 AND m.receiver.id = :userId1)) AND m.id < :beforeId " +
+            "ORDER BY m.id DESC")
+    List<Message> findConversationPageBeforeByParticipants(@Param("userId1") Long userId1,
+                                                           @Param("userId2") Long userId2,
+                                                           @Param("beforeId") Long beforeId,
+                                                           Pageable pageable);
+
+    @Query("SELECT m FROM Message m " +
+            "JOIN FETCH m.sender " +
+            "JOIN FETCH m.receiver " +
+            "WHERE ((m.sender.id = :userId1 AND m.receiver.id = :userId2) " +
+            "OR (m.sender.id = :userId2 AND m.receiver.id = :userId1)) AND m.id > :afterId " +
+            "ORDER BY m.id ASC")
+    List<Message> findConversationPageAfterByParticipants(@Param("userId1") Long userId1,
+                                                          @Param("userId2") Long userId2,
+                                                          @Param("afterId") Long afterId,
+                                                          Pageable pageable);
+
+    // 👇 Остались ли сообщения без conversation_key (LIMIT 1 по индексу idx_messages_conversation_id)
+    boolean existsByConversationKeyIsNullAndSenderIsNotNullAndReceiverIsNotNull();
+
+    // 👇 Заполняет conversation_key у сообщений, сохранённых до появления колонки - порциями по limit строк
+    // (IS NULL идёт по индексу idx_messages_conversation_id, каждая порция - короткая транзакция)
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE messages " +
+            "SET conversation_key = CONCAT(LEAST(sender_id, receiver_id), '_', GREATEST(sender_id, receiver_id)) " +
+            "WHERE conversation_key IS NULL AND sender_id IS NOT NULL AND receiver_id IS NOT NULL " +
+            "LIMIT :limit",
+            nativeQuery = true)
+    int backfillConversationKeys(@Param("limit") int limit);
+
+    // 👇 Источник для пересборки счётчиков непрочитанных: receiver, sender, count
+    @Query("SELECT m.receiver.username, m.sender.username, COUNT(m) FROM Message m " +
+            "WHERE m.isRead = false " +
+            "GROUP BY m.receiver.username, m.sender.username")
+    List<Object[]> countUnreadByReceiverAndSender();
+
+    @Query("SELECT m.sender.username, COUNT(m) FROM Message m " +
+            "WHERE m.receiver.username = :username AND m.isRead = false " +
+            "GROUP BY m.sender.username")
+    List<Object[]> countUnreadBySenderForReceiver(@Param("username") String username);
+
+    // 👇 Последнее сообщение каждого диалога пользователя (пересборка списка чатов)
+    @Query("SELECT m FROM Message m " +
+            "JOIN FETCH m.sender " +
+            "JOIN FETCH m.receiver " +
+            "WHERE m.id IN (SELECT MAX(m2.id) FROM Message m2 " +
+            "WHERE m2.sender.username = :username OR m2.receiver.username = :username " +
+            "GROUP BY LEAST(m2.sender.id, m2.receiver.id), GREATEST(m2.sender.id, m2.receiver.id))")
+    List<Message> findLastMessagePerConversation(@Param("username") String username);
+
+    // 👇 Сообщения получателя из пачки, статус которых ещё ниже нового. Строки блокируются до конца
+    // транзакции, чтобы параллельный batch не изменил их между выборкой и UPDATE
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT m FROM Message m " +
+            "WHERE m.id IN :ids AND m.receiver.id = :receiverId AND m.status IN :lowerStatuses")
+    List<Message> findForStatusUpdate(@Param("ids") Collection<Long> ids,
+                                      @Param("receiverId") Long receiverId,
+                                      @Param("lowerStatuses") Collection<MessageStatus> lowerStatuses);
+
+    // 👇 Один UPDATE на всю пачку; условие по статусу сохраняет монотонность SENT -> DELIVERED -> READ
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Message m SET m.status = :status " +
+            "WHERE m.id IN :ids AND m.receiver.id = :receiverId AND m.status IN :lowerStatuses")
+    int updateStatusBatch(@Param("ids") Collection<Long> ids,
+                          @Param("receiverId") Long receiverId,
+                          @Param("status") MessageStatus status,
+                          @Param("lowerStatuses") Collection<MessageStatus> lowerStatuses);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Message m SET m.status = :status, m.isRead = true " +
+            "WHERE m.id IN :ids AND m.receiver.id = :receiverId AND m.status IN :lowerStatuses")
+    int updateStatusBatchAndMarkRead(@Param("ids") Collection<Long> ids,
+                                     @Param("receiverId") Long receiverId,
+                                     @Param("status") MessageStatus status,
+                                     @Param("lowerStatuses") Collection<MessageStatus> lowerStatuses);
+
+    // 👇 Страница недоставленных сообщений получателя (keyset по id) вместе с отправителем
+    @Query("SELECT m FROM Message m " +
+            "JOIN FETCH m.sender " +
+            "JOIN FETCH m.receiver " +
+            "WHERE m.receiver.id = :receiverId AND m.status = :status AND m.id > :afterId " +
+            "ORDER BY m.id ASC")
+    List<Message> findByReceiverAndStatusAfter(@Param("receiverId") Long receiverId,
+                                               @Param("status") MessageStatus status,
+                                               @Param("afterId") Long afterId,
+                                               Pageable pageable);
+}
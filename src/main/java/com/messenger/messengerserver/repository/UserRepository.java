@@ -2,10 +2,13 @@ package com.messenger.messengerserver.repository;
 
 import com.messenger.messengerserver.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,8 +17,19 @@ public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
     boolean existsByUsername(String username);
     List<User> findByUsernameContainingIgnoreCase(String username);
+    List<User> findByUsernameIn(Collection<String> usernames);
 
 
     @Query("SELECT u FROM User u WHERE LOWER(u.username) LIKE LOWER(CONCAT('%', :query, '%')) OR LOWER(u.displayName) LIKE LOWER(CONCAT('%', :query, '%'))")
     List<User> searchUsers(@Param("query") String query);
+
+    // username, fcmToken - только пользователи с токеном
+    @Query("SELECT u.username, u.fcmToken FROM User u WHERE u.username IN :usernames AND u.fcmToken IS NOT NULL AND u.fcmToken <> ''")
+    List<Object[]> findFcmTokensByUsernameIn(@Param("usernames") Collection<String> usernames);
+
+    // Удаляет токен, только если пользователь не успел зарегистрировать новый
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.fcmToken = NULL WHERE u.username = :username AND u.fcmToken = :token")
+    int clearFcmToken(@Param("username") String username, @Param("token") String token);
 }
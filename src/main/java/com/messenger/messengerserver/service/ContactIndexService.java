@@ -0,0 +1,79 @@
+package com.messenger.messengerserver.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.messenger.messengerserver.repository.ContactRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Закэшированный обратный индекс контактов: username -> кто держит его в контактах.
+ * Изменения контактов рассылаются через Redis pub/sub (contacts.changed), каждый узел сбрасывает запись.
+ */
+@Service
+public class ContactIndexService {
+
+    private static final Logger log = LoggerFactory.getLogger(ContactIndexService.class);
+
+    public static final String CONTACTS_CHANNEL = "contacts.changed";
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${messenger.contacts.cache.max-size:100000}")
+    private long cacheMaxSize;
+
+    @Value("${messenger.contacts.cache.ttl-minutes:10}")
+    private long cacheTtlMinutes;
+
+    private Cache<String, Set<String>> watchersCache;
+
+    @PostConstruct
+    public void init() {
+        watchersCache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofMinutes(cacheTtlMinutes))
+                .build();
+
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> watchersCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CONTACTS_CHANNEL));
+    }
+
+    /**
+     * Пользователи, у которых username в контактах
+     */
+    public Set<String> getWatchers(String username) {
+        return watchersCache.get(username, key -> new HashSet<>(contactRepository.findUsernamesHavingContact(key)));
+    }
+
+    /**
+     * Кто-то добавил или удалил contactUsername из своих контактов
+     */
+    public void onContactChanged(String contactUsername) {
+        watchersCache.invalidate(contactUsername);
+        try {
+            redisTemplate.convertAndSend(CONTACTS_CHANNEL, contactUsername);
+        } catch (Exception e) {
+            log.error("❌ [CONTACTS] Error publishing contact change for {}: {}", contactUsername, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.messenger.messengerserver.service;
+
+import com.messenger.messengerserver.repository.MessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * Одноразовая миграция: conversation_key для сообщений, записанных до появления колонки.
+ * Выполняется одним узлом (блокировка в Redis), порциями, в фоне; по завершении ставится маркер -
+ * последующие запуски на любом узле миграцию пропускают.
+ * Когда маркер стоит во всех окружениях - выключить messenger.migration.conversation-key-backfill.enabled
+ * и удалить этот класс вместе с MessageRepository.backfillConversationKeys
+ */
+@Service
+@ConditionalOnProperty(name = "messenger.migration.conversation-key-backfill.enabled", havingValue = "true", matchIfMissing = true)
+public class ConversationKeyBackfillService {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationKeyBackfillService.class);
+
+    private static final String DONE_KEY = "migration:conversation-key-backfill:done";
+    private static final String LOCK_KEY = "migration:conversation-key-backfill:lock";
+    private static final Duration LOCK_TTL = Duration.ofMinutes(10);
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Value("${messenger.migration.conversation-key-backfill.batch-size:5000}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnce() {
+        try {
+            if (Boolean.TRUE.equals(redisTemplate.hasKey(DONE_KEY))) {
+                return;
+            }
+            if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, "1", LOCK_TTL))) {
+                log.info("conversation_key backfill is running on another node");
+                return;
+            }
+        } catch (Exception e) {
+            log.warn("❌ conversation_key backfill skipped, Redis unavailable: {}", e.getMessage());
+            return;
+        }
+
+        Thread thread = new Thread(this::backfill, "conversation-key-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void backfill() {
+        long total = 0;
+        try {
+            int updated;
+            do {
+                updated = messageRepository.backfillConversationKeys(batchSize);
+                total += updated;
+                // Продлеваем блокировку, пока идут порции
+                redisTemplate.expire(LOCK_KEY, LOCK_TTL);
+            } while (updated >= batchSize);
+
+            redisTemplate.opsForValue().set(DONE_KEY, String.valueOf(System.currentTimeMillis()));
+            log.info("✅ conversation_key backfill done, {} old messages updated", total);
+        } catch (Exception e) {
+            log.error("❌ conversation_key backfill failed after {} messages: {}", total, e.getMessage());
+        } finally {
+            redisTemplate.delete(LOCK_KEY);
+        }
+    }
+}
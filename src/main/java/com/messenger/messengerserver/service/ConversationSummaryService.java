@@ -0,0 +1,300 @@
+package com.messenger.messengerserver.service;
+
+import com.messenger.messengerserver.dto.ConversationDto;
+import com.messenger.messengerserver.dto.MessageDto;
+import com.messenger.messengerserver.mapper.MessageMapper;
+import com.messenger.messengerserver.model.Message;
+import com.messenger.messengerserver.model.User;
+import com.messenger.messengerserver.repository.MessageRepository;
+import com.messenger.messengerserver.repository.UserRepository;
+import com.messenger.messengerserver.util.AfterCommit;
+import com.messenger.messengerserver.util.LogThrottle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Денормализованный список чатов в Redis, обновляется при каждой записи сообщения:
+ * conversations:{username}        - zset: собеседник, score = время последнего сообщения
+ * conversations:{username}:ready  - маркер: zset пользователя полностью собран из БД
+ * conversation:last:a:b           - hash с последним сообщением диалога (a < b)
+ * Скрипт записи трогает ключи обоих участников и диалога сразу - нужен один экземпляр Redis
+ * (не Redis Cluster); {username} только группирует ключи одного пользователя
+ */
+@Service
+public class ConversationSummaryService {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationSummaryService.class);
+
+    // Ошибки Redis на каждом сообщении - в лог не чаще раза в 30 секунд
+    private static final LogThrottle REDIS_ERROR_LOG = new LogThrottle(Duration.ofSeconds(30));
+
+    private static final String CONVERSATIONS_KEY = "conversations:";
+    private static final String READY_SUFFIX = ":ready";
+    private static final String LAST_MESSAGE_KEY = "conversation:last:";
+
+    // Сообщения доставляются параллельно, пересборка идёт одновременно с записью - не затираем более новое
+    // последнее сообщение более старым и не опускаем собеседника в списке.
+    // ID сравниваются как строки (длина, затем лексикографически): Lua number теряет точность на 64-битных ID
+    private static final String NEWER_LAST_MESSAGE =
+            "local function isNewer(current, id) " +
+            "return current and (#current > #id or (#current == #id and current > id)) end " +
+            "local function bump(key, score, member) " +
+            "local old = redis.call('ZSCORE', key, member) " +
+            "if (not old) or tonumber(old) < tonumber(score) then redis.call('ZADD', key, score, member) end end ";
+
+    // KEYS: zset отправителя, zset получателя, hash диалога; ARGV: получатель, отправитель, score, id, поля hash
+    private static final RedisScript<Long> STORE_SCRIPT = new DefaultRedisScript<>(
+            NEWER_LAST_MESSAGE +
+            "if isNewer(redis.call('HGET', KEYS[3], 'id'), ARGV[4]) then return 0 end " +
+            "redis.call('HSET', KEYS[3], unpack(ARGV, 5)) " +
+            "bump(KEYS[1], ARGV[3], ARGV[1]) " +
+            "bump(KEYS[2], ARGV[3], ARGV[2]) " +
+            "return 1",
+            Long.class);
+
+    // Пересборка одного диалога пользователя: KEYS: zset пользователя, hash диалога; ARGV: собеседник, score, id, поля hash.
+    // Снимок из БД перезаписывает hash, только если его сообщение строго новее. Для того же сообщения
+    // статус только растёт (SENT < DELIVERED < READ): STATUS_SCRIPT мог уже записать более свежий
+    private static final String REBUILD_SCRIPT =
+            NEWER_LAST_MESSAGE +
+            "local current = redis.call('HGET', KEYS[2], 'id') " +
+            "if (not current) or isNewer(ARGV[3], current) then " +
+            "redis.call('HSET', KEYS[2], unpack(ARGV, 4)) " +
+            "elseif current == ARGV[3] then " +
+            "local fields = {} " +
+            "for i = 4, #ARGV - 1, 2 do fields[ARGV[i]] = ARGV[i + 1] end " +
+            "local rank = {SENT = 1, DELIVERED = 2, READ = 3} " +
+            "local status = redis.call('HGET', KEYS[2], 'status') " +
+            "if (rank[fields.status] or 0) > (rank[status] or 0) then " +
+            "redis.call('HSET', KEYS[2], 'status', fields.status) end " +
+            "if fields.isRead == 'true' then redis.call('HSET', KEYS[2], 'isRead', 'true') end end " +
+            "bump(KEYS[1], ARGV[2], ARGV[1]) " +
+            "return 1";
+
+    // Статус меняем, только если это всё ещё последнее сообщение диалога
+    private static final RedisScript<Long> STATUS_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HGET', KEYS[1], 'id') == ARGV[1] then " +
+            "redis.call('HSET', KEYS[1], 'status', ARGV[2], 'isRead', ARGV[3]) return 1 end " +
+            "return 0",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MessageMapper messageMapper;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private UserService userService;
+
+    /**
+     * Новое сохранённое сообщение - обновляем последнее сообщение и порядок чатов у обоих участников
+     */
+    public void onMessageStored(MessageDto message) {
+        String sender = message.getSenderUsername();
+        String receiver = message.getReceiverUsername();
+
+        List<String> args = new ArrayList<>();
+        args.add(receiver);
+        args.add(sender);
+        args.add(String.valueOf(toScore(message.getTimestamp())));
+        args.add(String.valueOf(message.getId()));
+        toHash(message).forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+
+        try {
+            redisTemplate.execute(STORE_SCRIPT,
+                    List.of(conversationsKey(sender), conversationsKey(receiver), lastMessageKey(sender, receiver)),
+                    args.toArray());
+        } catch (Exception e) {
+            logRedisError("storing last message", message.getId(), e);
+        }
+    }
+
+    /**
+     * Статус сообщений изменился. Внутри транзакции - применяется после коммита.
+     * На диалог достаточно одного вызова - с максимальным ID среди изменённых
+     */
+    public void onStatusChanged(List<MessageDto> updatedMessages) {
+        Map<String, MessageDto> latestByConversation = updatedMessages.stream()
+                .collect(Collectors.toMap(
+                        m -> lastMessageKey(m.getSenderUsername(), m.getReceiverUsername()),
+                        Function.identity(),
+                        (a, b) -> a.getId() > b.getId() ? a : b));
+
+        AfterCommit.run(() -> latestByConversation.forEach((key, message) -> {
+            try {
+                redisTemplate.execute(STATUS_SCRIPT, List.of(key),
+                        String.valueOf(message.getId()),
+                        message.getStatus(),
+                        String.valueOf(Boolean.TRUE.equals(message.getIsRead())));
+            } catch (Exception e) {
+                logRedisError("updating status of", message.getId(), e);
+            }
+        }));
+    }
+
+    /**
+     * Список чатов пользователя: последнее сообщение, непрочитанные и присутствие собеседника
+     */
+    public List<ConversationDto> getConversations(String username, int limit) {
+        if (Boolean.FALSE.equals(redisTemplate.hasKey(readyKey(username)))) {
+            rebuildForUser(username);
+        }
+
+        Set<String> partnerSet = redisTemplate.opsForZSet().reverseRange(conversationsKey(username), 0, limit - 1);
+        if (partnerSet == null || partnerSet.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> partners = new ArrayList<>(partnerSet);
+
+        List<Object> lastMessages = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            for (String partner : partners) {
+                redis.hGetAll(lastMessageKey(username, partner));
+            }
+            return null;
+        });
+
+        Map<String, Long> unread = unreadCounterService.getUnreadByConversation(username);
+        Map<String, User> partnerUsers = userRepository.findByUsernameIn(partners).stream()
+                .collect(Collectors.toMap(User::getUsername, Function.identity()));
+        Set<String> onlinePartners = userService.getOnlineAmong(partners);
+
+        List<ConversationDto> conversations = new ArrayList<>(partners.size());
+        for (int i = 0; i < partners.size(); i++) {
+            String partner = partners.get(i);
+            User partnerUser = partnerUsers.get(partner);
+            if (partnerUser == null) {
+                continue;
+            }
+
+            @SuppressWarnings("unchecked")
+            Map<String, String> hash = (Map<String, String>) lastMessages.get(i);
+            boolean online = onlinePartners.contains(partner);
+
+            ConversationDto dto = new ConversationDto();
+            dto.setPartnerUsername(partner);
+            dto.setPartnerDisplayName(partnerUser.getDisplayName());
+            dto.setPartnerAvatarUrl(partnerUser.getAvatarUrl());
+            dto.setPartnerOnline(online);
+            dto.setPartnerLastSeenText(online ? "online" : UserService.formatLastSeenDetailed(partnerUser.getLastSeen()));
+            dto.setLastMessage(hash == null || hash.isEmpty() ? null : fromHash(hash));
+            dto.setUnreadCount(unread.getOrDefault(partner, 0L));
+            conversations.add(dto);
+        }
+        return conversations;
+    }
+
+    /**
+     * Пересборка списка чатов пользователя из messages (первый запрос или потеря данных Redis).
+     * Сливается с тем, что уже записал STORE_SCRIPT: более новое последнее сообщение и более
+     * поздний score остаются, снимок из БД их не перезаписывает
+     */
+    public void rebuildForUser(String username) {
+        List<Message> lastMessages = messageRepository.findLastMessagePerConversation(username);
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            for (Message message : lastMessages) {
+                MessageDto dto = messageMapper.toDto(message);
+                String partner = username.equals(dto.getSenderUsername())
+                        ? dto.getReceiverUsername()
+                        : dto.getSenderUsername();
+
+                List<String> keysAndArgs = new ArrayList<>();
+                keysAndArgs.add(conversationsKey(username));
+                keysAndArgs.add(lastMessageKey(username, partner));
+                keysAndArgs.add(partner);
+                keysAndArgs.add(String.valueOf(toScore(dto.getTimestamp())));
+                keysAndArgs.add(String.valueOf(dto.getId()));
+                toHash(dto).forEach((field, value) -> {
+                    keysAndArgs.add(field);
+                    keysAndArgs.add(value);
+                });
+                redis.eval(REBUILD_SCRIPT, ReturnType.INTEGER, 2, keysAndArgs.toArray(new String[0]));
+            }
+            redis.set(readyKey(username), "1");
+            return null;
+        });
+    }
+
+    private Map<String, String> toHash(MessageDto message) {
+        Map<String, String> hash = new LinkedHashMap<>();
+        hash.put("id", String.valueOf(message.getId()));
+        hash.put("content", message.getContent() != null ? message.getContent() : "");
+        hash.put("senderUsername", message.getSenderUsername());
+        hash.put("receiverUsername", message.getReceiverUsername());
+        hash.put("timestamp", message.getTimestamp() != null ? message.getTimestamp().toString() : "");
+        hash.put("status", message.getStatus() != null ? message.getStatus() : "SENT");
+        hash.put("type", message.getType() != null ? message.getType() : "TEXT");
+        hash.put("isRead", String.valueOf(Boolean.TRUE.equals(message.getIsRead())));
+        return hash;
+    }
+
+    private MessageDto fromHash(Map<String, String> hash) {
+        String timestamp = hash.get("timestamp");
+        return new MessageDto(
+                Long.valueOf(hash.get("id")),
+                hash.get("content"),
+                timestamp == null || timestamp.isEmpty() ? null : LocalDateTime.parse(timestamp),
+                Boolean.valueOf(hash.get("isRead")),
+                hash.get("senderUsername"),
+                hash.get("receiverUsername"),
+                hash.get("type"),
+                hash.get("status")
+        );
+    }
+
+    private double toScore(LocalDateTime timestamp) {
+        LocalDateTime time = timestamp != null ? timestamp : LocalDateTime.now();
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private String conversationsKey(String username) {
+        return CONVERSATIONS_KEY + "{" + username + "}";
+    }
+
+    private String readyKey(String username) {
+        return CONVERSATIONS_KEY + "{" + username + "}" + READY_SUFFIX;
+    }
+
+    private String lastMessageKey(String user1, String user2) {
+        return user1.compareTo(user2) < 0
+                ? LAST_MESSAGE_KEY + user1 + ":" + user2
+                : LAST_MESSAGE_KEY + user2 + ":" + user1;
+    }
+
+    private static void logRedisError(String action, Long messageId, Exception e) {
+        long skipped = REDIS_ERROR_LOG.tryAcquire();
+        if (skipped >= 0) {
+            log.error("❌ [CONVERSATIONS] Error {} {}: {} ({} more since last error)", action, messageId, e.getMessage(), skipped);
+        }
+    }
+}
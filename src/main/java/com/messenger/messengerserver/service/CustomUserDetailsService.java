@@ -1,23 +1,88 @@
 package com.messenger.messengerserver.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.messenger.messengerserver.model.User;
 import com.messenger.messengerserver.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Collections;
 
+/**
+ * Principal по username для JWT-фильтра, STOMP CONNECT и логина - из локального кэша.
+ * Смена пароля / удаление пользователя (UserCredentialsListener) сбрасывают запись
+ * на всех узлах через канал user.credentials, TTL - страховка от потерянного сообщения
+ */
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
+    private static final Logger log = LoggerFactory.getLogger(CustomUserDetailsService.class);
+
+    public static final String CREDENTIALS_CHANNEL = "user.credentials";
+
     @Autowired
     private UserRepository userRepository; // Используем репозиторий напрямую
 
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${messenger.principal.cache.max-size:100000}")
+    private long cacheMaxSize;
+
+    @Value("${messenger.principal.cache.ttl-minutes:10}")
+    private long cacheTtlMinutes;
+
+    private Cache<String, UserDetails> principalCache;
+
+    @PostConstruct
+    public void init() {
+        principalCache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofMinutes(cacheTtlMinutes))
+                .build();
+
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> principalCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CREDENTIALS_CHANNEL));
+    }
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        // Отсутствующий пользователь не кэшируется - исключение пробрасывается из get.
+        // Отдаём копию: ProviderManager после логина стирает пароль у principal (eraseCredentials)
+        UserDetails cached = principalCache.get(username, this::loadFromDatabase);
+        return org.springframework.security.core.userdetails.User.withUserDetails(cached).build();
+    }
+
+    /**
+     * Пароль изменён или пользователь удалён - сбрасываем локально и на остальных узлах
+     */
+    public void evict(String username) {
+        principalCache.invalidate(username);
+        try {
+            redisTemplate.convertAndSend(CREDENTIALS_CHANNEL, username);
+        } catch (Exception e) {
+            log.error("❌ [PRINCIPAL] Error publishing eviction for {}: {}", username, e.getMessage());
+        }
+    }
+
+    private UserDetails loadFromDatabase(String username) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
 
@@ -27,4 +92,4 @@ public class CustomUserDetailsService implements UserDetailsService {
                 Collections.emptyList()
         );
     }
-}
\ No newline at end of file
+}
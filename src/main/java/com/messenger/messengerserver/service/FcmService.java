@@ -1,47 +1,30 @@
 package com.messenger.messengerserver.service;
 
-import com.google.firebase.messaging.*;
+import com.google.firebase.messaging.Message;
+import com.google.firebase.messaging.Notification;
 import com.messenger.messengerserver.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
 import java.util.List;
 
 @Service
 public class FcmService {
 
+    private static final Logger log = LoggerFactory.getLogger(FcmService.class);
+
     @Autowired
-    private UserService userService;
+    private PushDispatchService pushDispatchService;
 
+    // Уведомления не отправляются в вызывающем потоке: они ставятся в очередь PushDispatchService,
+    // токены и имена загружаются там одним запросом на пачку
     public void sendNewMessageNotification(String senderUsername, String receiverUsername, String messageContent, Long messageId) {
-        try {
-            System.out.println("=== 🔵 [FCM TRACE] START ===");
-            System.out.println("  Sender: " + senderUsername);
-            System.out.println("  Receiver: " + receiverUsername);
-            System.out.println("  Message ID: " + messageId);
-
-            User receiver = userService.findByUsername(receiverUsername)
-                    .orElseThrow(() -> new RuntimeException("Receiver not found"));
-            System.out.println("  ✅ Receiver found: " + receiver.getUsername());
-
-            String fcmToken = receiver.getFcmToken();
-            System.out.println("  🔍 FCM Token from DB: " +
-                    (fcmToken != null ? "'" + fcmToken.substring(0, Math.min(10, fcmToken.length())) + "...'" : "NULL"));
-
-            if (fcmToken == null || fcmToken.isEmpty()) {
-                System.out.println("⚠️ No FCM token for user: " + receiverUsername);
-                return;
-            }
+        pushDispatchService.enqueue(receiverUsername, List.of(senderUsername), (fcmToken, users) -> {
+            String senderDisplayName = displayName(users.get(senderUsername), senderUsername);
 
-            User sender = userService.findByUsername(senderUsername).orElse(null);
-            String senderDisplayName = sender != null && sender.getDisplayName() != null
-                    ? sender.getDisplayName()
-                    : senderUsername;
-
-            System.out.println("  🔍 Building FCM message...");
-
-            Message message = Message.builder()
+            return Message.builder()
                     .setToken(fcmToken)
                     .putData("type", "NEW_MESSAGE")
                     .putData("sender", senderDisplayName)
@@ -51,44 +34,18 @@ public class FcmService {
                     .putData("deepLinkAction", "OPEN_CHAT")
                     .putData("targetUsername", receiverUsername)
                     .build();
-
-            System.out.println("📤 [FCM DEBUG] Sending data:");
-            System.out.println("   senderUsername: " + senderUsername);
-            System.out.println("   messageId: " + messageId);
-
-            String response = FirebaseMessaging.getInstance().send(message);
-            System.out.println("✅ FCM notification sent: " + response);
-
-        } catch (Exception e) {
-            System.err.println("❌ Error sending FCM notification: " + e.getMessage());
-            e.printStackTrace();
-        } finally {
-            System.out.println("=== 🔵 [FCM TRACE] END ===");
-        }
+        });
     }
 
     public void sendIncomingCallNotification(String callerUsername, String receiverUsername) {
-        try {
-            System.out.println("📞 [FCM CALL] Sending incoming call notification");
-            System.out.println("  Caller: " + callerUsername);
-            System.out.println("  Receiver: " + receiverUsername);
-
-            User receiver = userService.findByUsername(receiverUsername)
-                    .orElseThrow(() -> new RuntimeException("Receiver not found for call"));
+        log.debug("📞 [FCM CALL] Queueing incoming call notification: {} -> {}", callerUsername, receiverUsername);
+        long timestamp = System.currentTimeMillis();
 
-            String fcmToken = receiver.getFcmToken();
+        // Звонок устаревает за секунды - мимо очереди пачек
+        pushDispatchService.enqueueUrgent(receiverUsername, List.of(callerUsername), (fcmToken, users) -> {
+            String callerDisplayName = displayName(users.get(callerUsername), callerUsername);
 
-            if (fcmToken == null || fcmToken.isEmpty()) {
-                System.out.println("⚠️ No FCM token for user: " + receiverUsername);
-                return;
-            }
-
-            User caller = userService.findByUsername(callerUsername).orElse(null);
-            String callerDisplayName = caller != null && caller.getDisplayName() != null
-                    ? caller.getDisplayName()
-                    : callerUsername;
-
-            Message message = Message.builder()
+            return Message.builder()
                     .setToken(fcmToken)
                     .setNotification(Notification.builder()
                             .setTitle("Входящий звонок")
@@ -100,74 +57,24 @@ public class FcmService {
                     .putData("callType", "audio")
                     .putData("deepLinkAction", "ANSWER_CALL")
                     .putData("targetUsername", receiverUsername)
-                    .putData("timestamp", String.valueOf(System.currentTimeMillis()))
+                    .putData("timestamp", String.valueOf(timestamp))
                     .build();
-
-            String response = FirebaseMessaging.getInstance().send(message);
-            System.out.println("✅ FCM call notification sent: " + response);
-
-        } catch (Exception e) {
-            System.err.println("❌ Error sending FCM call notification: " + e.getMessage());
-            e.printStackTrace();
-        }
+        });
     }
 
     // 👇 НОВЫЙ МЕТОД: отправка DELIVERED через FCM
     public void sendDeliveredConfirmation(String senderUsername, Long messageId, String receiverUsername) {
-        try {
-            System.out.println("📤 [FCM STATUS] Sending DELIVERED confirmation via FCM to: " + senderUsername);
-
-            User sender = userService.findByUsername(senderUsername)
-                    .orElseThrow(() -> new RuntimeException("Sender not found for status update"));
-
-            String fcmToken = sender.getFcmToken();
-
-            if (fcmToken == null || fcmToken.isEmpty()) {
-                System.out.println("⚠️ No FCM token for sender: " + senderUsername);
-                return;
-            }
-
-            Message message = Message.builder()
-                    .setToken(fcmToken)
-                    .putData("type", "STATUS_UPDATE")
-                    .putData("messageId", String.valueOf(messageId))
-                    .putData("status", "DELIVERED")
-                    .putData("senderUsername", receiverUsername) // кто отправил подтверждение
-                    .putData("receiverUsername", senderUsername) // кому отправляем
-                    .build();
-
-            String response = FirebaseMessaging.getInstance().send(message);
-            System.out.println("✅ DELIVERED confirmation sent via FCM: " + response);
-
-        } catch (Exception e) {
-            System.err.println("❌ Error sending DELIVERED via FCM: " + e.getMessage());
-            e.printStackTrace();
-        }
+        pushDispatchService.enqueue(senderUsername, (fcmToken, users) -> Message.builder()
+                .setToken(fcmToken)
+                .putData("type", "STATUS_UPDATE")
+                .putData("messageId", String.valueOf(messageId))
+                .putData("status", "DELIVERED")
+                .putData("senderUsername", receiverUsername) // кто отправил подтверждение
+                .putData("receiverUsername", senderUsername) // кому отправляем
+                .build());
     }
 
-    public void sendReconnectCommandBatch(List<String> usernames) {
-        try {
-            System.out.println("📱 Отправка FCM команд " + usernames.size() + " пользователям");
-
-            for (String username : usernames) {
-                User user = userService.findByUsername(username).orElse(null);
-                if (user != null && user.getFcmToken() != null && !user.getFcmToken().isEmpty()) {
-
-                    Message message = Message.builder()
-                            .setToken(user.getFcmToken())
-                            .putData("type", "SERVER_RESTARTED")
-                            .putData("action", "DO_BACKGROUND")
-                            .putData("timestamp", String.valueOf(System.currentTimeMillis()))
-                            .build();
-
-                    FirebaseMessaging.getInstance().send(message);
-                    System.out.println("  ✅ Отправлено: " + username);
-                    Thread.sleep(100);
-                }
-            }
-            System.out.println("✅ Отправка завершена");
-        } catch (Exception e) {
-            System.err.println("❌ Ошибка: " + e.getMessage());
-        }
+    private String displayName(User user, String username) {
+        return user != null && user.getDisplayName() != null ? user.getDisplayName() : username;
     }
-}
\ No newline at end of file
+}
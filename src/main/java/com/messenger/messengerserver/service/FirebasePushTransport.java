@@ -0,0 +1,72 @@
+package com.messenger.messengerserver.service;
+
+import com.google.firebase.messaging.*;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@Component
+public class FirebasePushTransport implements PushTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(FirebasePushTransport.class);
+
+    @Autowired
+    private MessagingMetrics messagingMetrics;
+
+    @Override
+    public List<Outcome> sendEach(List<Message> messages) {
+        Timer.Sample sample = Timer.start();
+        List<Outcome> outcomes = send(messages);
+        sample.stop(messagingMetrics.pushSend());
+
+        for (Outcome outcome : outcomes) {
+            messagingMetrics.pushOutcome(outcome);
+        }
+        return outcomes;
+    }
+
+    private List<Outcome> send(List<Message> messages) {
+        try {
+            BatchResponse response = FirebaseMessaging.getInstance().sendEach(messages);
+
+            List<Outcome> outcomes = new ArrayList<>(messages.size());
+            for (SendResponse sendResponse : response.getResponses()) {
+                outcomes.add(sendResponse.isSuccessful()
+                        ? Outcome.SENT
+                        : toOutcome(sendResponse.getException()));
+            }
+            return outcomes;
+        } catch (FirebaseMessagingException e) {
+            // Ошибка всего запроса (сеть, авторизация) - решаем за всю пачку сразу
+            log.error("❌ [PUSH] sendEach failed for {} messages: {}", messages.size(), e.getMessage());
+            return Collections.nCopies(messages.size(), toOutcome(e));
+        } catch (Exception e) {
+            log.error("❌ [PUSH] sendEach failed for {} messages: {}", messages.size(), e.getMessage());
+            return Collections.nCopies(messages.size(), Outcome.RETRYABLE);
+        }
+    }
+
+    private Outcome toOutcome(FirebaseMessagingException e) {
+        if (e == null || e.getMessagingErrorCode() == null) {
+            return Outcome.RETRYABLE;
+        }
+
+        switch (e.getMessagingErrorCode()) {
+            case UNREGISTERED:
+            case SENDER_ID_MISMATCH:
+                return Outcome.UNREGISTERED;
+            case UNAVAILABLE:
+            case INTERNAL:
+            case QUOTA_EXCEEDED:
+                return Outcome.RETRYABLE;
+            default:
+                return Outcome.FAILED;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.messenger.messengerserver.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Скользящее окно в памяти узла: счётчик текущего окна + вес предыдущего
+ * (доля предыдущего окна, ещё попадающая в последние windowMs).
+ * Обновление - CAS без блокировок, число ключей ограничено Caffeine (maximumSize + expireAfterAccess)
+ */
+@Component
+@ConditionalOnProperty(name = "messenger.ratelimit.backend", havingValue = "local")
+public class LocalRateLimiter implements RateLimiter {
+
+    private record Window(long index, int current, int previous) {
+    }
+
+    private final long windowMs;
+    private final LongSupplier clock;
+    private final Cache<String, AtomicReference<Window>> windows;
+
+    @Autowired
+    public LocalRateLimiter(@Value("${messenger.ratelimit.window-seconds:60}") long windowSeconds,
+                            @Value("${messenger.ratelimit.local.max-keys:100000}") long maxKeys) {
+        this(Duration.ofSeconds(windowSeconds).toMillis(), maxKeys, System::currentTimeMillis);
+    }
+
+    LocalRateLimiter(long windowMs, long maxKeys, LongSupplier clock) {
+        this.windowMs = windowMs;
+        this.clock = clock;
+        // Через два окна без запросов счётчик ключа уже нулевой - запись можно выбросить
+        this.windows = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(Duration.ofMillis(windowMs * 2))
+                .build();
+    }
+
+    @Override
+    public boolean tryAcquire(String key, int limit) {
+        AtomicReference<Window> ref = windows.get(key, k -> new AtomicReference<>(new Window(0, 0, 0)));
+
+        while (true) {
+            long now = clock.getAsLong();
+            long index = now / windowMs;
+            Window window = ref.get();
+
+            int current = window.index() == index ? window.current() : 0;
+            int previous = window.index() == index ? window.previous()
+                    : window.index() == index - 1 ? window.current() : 0;
+
+            double previousWeight = 1.0 - (double) (now % windowMs) / windowMs;
+            if (previous * previousWeight + current >= limit) {
+                return false;
+            }
+
+            if (ref.compareAndSet(window, new Window(index, current + 1, previous))) {
+                return true;
+            }
+        }
+    }
+}
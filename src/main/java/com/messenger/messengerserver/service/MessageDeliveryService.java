@@ -0,0 +1,121 @@
+package com.messenger.messengerserver.service;
+
+import com.messenger.messengerserver.dto.MessageDto;
+import com.messenger.messengerserver.util.LogThrottle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Доставка сохранённого сообщения получателю вне входящего STOMP потока
+ */
+@Service
+public class MessageDeliveryService {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageDeliveryService.class);
+
+    private static final LogThrottle REJECTED_LOG = new LogThrottle(Duration.ofSeconds(10));
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private FcmService fcmService;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+
+    @Autowired
+    private MessagingMetrics messagingMetrics;
+
+    @Autowired
+    private MessageLatencyTracker latencyTracker;
+
+    @Autowired
+    @Qualifier("messageDispatchExecutor")
+    private ThreadPoolTaskExecutor messageDispatchExecutor;
+
+    /**
+     * После коммита write-behind batch'а, в потоке write-behind: вся обработка уходит в messageDispatchExecutor.
+     * Пул переполнен - подтверждение SENT отправителю, счётчик непрочитанных и сводка диалога
+     * применяются здесь же (иначе они разошлись бы с БД навсегда), а пропускается только доставка
+     * получателю: сообщение в БД со статусом SENT, он заберёт его досылкой при следующем подключении
+     */
+    public void dispatchPersisted(MessageDto messageDto) {
+        try {
+            messageDispatchExecutor.execute(() -> {
+                recordPersisted(messageDto);
+                deliverToReceiver(messageDto);
+            });
+        } catch (RejectedExecutionException e) {
+            messagingMetrics.dispatchRejected().increment();
+            long skipped = REJECTED_LOG.tryAcquire();
+            if (skipped >= 0) {
+                log.warn("⚠️ Dispatch pool saturated, receiver fan-out deferred to replay on connect " +
+                        "({} more since last warning)", skipped);
+            }
+            recordPersisted(messageDto);
+        }
+    }
+
+    // Read-модели (непрочитанные, сводка диалогов) и подтверждение отправителю.
+    // Read-модели первыми: они сами обрабатывают ошибки Redis, а инкремент снимает отметку pending
+    private void recordPersisted(MessageDto messageDto) {
+        unreadCounterService.onMessageStored(messageDto.getReceiverUsername(), messageDto.getSenderUsername());
+        conversationSummaryService.onMessageStored(messageDto);
+        try {
+            messagingTemplate.convertAndSendToUser(messageDto.getSenderUsername(), "/queue/messages", messageDto);
+        } catch (Exception e) {
+            log.error("❌ Error acknowledging message {} to {}: {}",
+                    messageDto.getId(), messageDto.getSenderUsername(), e.getMessage());
+        }
+    }
+
+    private void deliverToReceiver(MessageDto messageDto) {
+        String senderUsername = messageDto.getSenderUsername();
+        String receiverUsername = messageDto.getReceiverUsername();
+
+        try {
+            // Проверяем, в чате ли получатель с отправителем
+            boolean isReceiverInChat = userService.isUserInChatWith(receiverUsername, senderUsername);
+
+            // Если онлайн - шлем сообщение, клиент сам ответит DELIVERED
+            boolean receiverOnline = messagingMetrics.presenceCheck()
+                    .record(() -> userService.isUserOnline(receiverUsername));
+            if (receiverOnline) {
+                messagingMetrics.websocketSend().record(() ->
+                        messagingTemplate.convertAndSendToUser(receiverUsername, "/queue/messages", messageDto));
+                latencyTracker.onFanout(messageDto);
+                log.debug("📨 Message sent to online receiver: {}", receiverUsername);
+            }
+
+            // FCM отправляем ВСЕГДА, КРОМЕ случая когда получатель в чате с отправителем
+            if (!isReceiverInChat) {
+                messagingMetrics.fcmEnqueue().record(() -> fcmService.sendNewMessageNotification(
+                        senderUsername,
+                        receiverUsername,
+                        messageDto.getContent(),
+                        messageDto.getId()
+                ));
+                log.debug("📱 FCM sent to receiver: {}", receiverUsername);
+            } else {
+                log.debug("📱 FCM skipped - receiver is in chat with sender");
+            }
+        } catch (Exception e) {
+            log.error("❌ Error delivering message {} to {}: {}", messageDto.getId(), receiverUsername, e.getMessage());
+        }
+    }
+}
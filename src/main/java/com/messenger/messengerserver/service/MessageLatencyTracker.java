@@ -0,0 +1,196 @@
+package com.messenger.messengerserver.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.messenger.messengerserver.dto.MessageDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сквозная задержка сообщений по выборке (messenger.tracing.sample-rate):
+ * отправка на клиенте -> запись в БД -> отправка в WebSocket получателя (сразу или досылкой
+ * при подключении) -> DELIVERED -> READ.
+ * Отметки времени трассы живут в памяти узла до READ или TTL; подтверждение или досылка
+ * на другом узле трассу не продолжают - выборка просто теряет этот отрезок.
+ * Результат - messenger.message.latency{segment} в /actuator/prometheus
+ */
+@Service
+public class MessageLatencyTracker {
+
+    /**
+     * Отметки одного сообщения (epoch ms). Создаётся при приёме, если сообщение попало в выборку
+     */
+    public static final class Trace {
+        private final String traceId;
+        private final long clientSentAt;
+        private final long ingestAt;
+        private volatile long persistedAt;
+        private volatile long fanoutAt;
+        private volatile long deliveredAt;
+
+        private Trace(String traceId, long clientSentAt, long ingestAt) {
+            this.traceId = traceId;
+            this.clientSentAt = clientSentAt;
+            this.ingestAt = ingestAt;
+        }
+    }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${messenger.tracing.sample-rate:0.01}")
+    private double sampleRate;
+
+    @Value("${messenger.tracing.max-traces:100000}")
+    private long maxTraces;
+
+    @Value("${messenger.tracing.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    // Время клиента вне [приём - окно, приём] - часы клиента сбиты или сообщение лежало
+    // в офлайн-очереди приложения: send_to_persist такого сообщения не учитывается
+    @Value("${messenger.tracing.max-client-skew-ms:30000}")
+    private long maxClientSkewMs;
+
+    private Cache<Long, Trace> traces;
+
+    private Timer sendToPersist;
+    private Timer ingestToPersist;
+    private Timer persistToFanout;
+    private Timer persistToReplay;
+    private Timer fanoutToDelivered;
+    private Timer persistToDelivered;
+    private Timer deliveredToRead;
+
+    @PostConstruct
+    public void init() {
+        traces = Caffeine.newBuilder()
+                .maximumSize(maxTraces)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .build();
+
+        sendToPersist = segmentTimer("send_to_persist");
+        ingestToPersist = segmentTimer("ingest_to_persist");
+        persistToFanout = segmentTimer("persist_to_fanout");
+        persistToReplay = segmentTimer("persist_to_replay");
+        fanoutToDelivered = segmentTimer("fanout_to_delivered");
+        persistToDelivered = segmentTimer("persist_to_delivered");
+        deliveredToRead = segmentTimer("delivered_to_read");
+    }
+
+    private Timer segmentTimer(String segment) {
+        return Timer.builder("messenger.message.latency")
+                .description("Сквозная задержка сообщения по выборке")
+                .tag("segment", segment)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Приём сообщения от клиента. null - сообщение не в выборке
+     */
+    public Trace startTrace(MessageDto incoming) {
+        if (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return null;
+        }
+        long clientSentAt = incoming.getClientTimestamp() != null ? incoming.getClientTimestamp() : 0L;
+        return new Trace(UUID.randomUUID().toString(), clientSentAt, System.currentTimeMillis());
+    }
+
+    /**
+     * Сообщение записано: traceId и время клиента уходят отправителю и получателю вместе с DTO
+     */
+    public void onPersisted(Trace trace, MessageDto persisted) {
+        if (trace == null || persisted.getId() == null) {
+            return;
+        }
+        trace.persistedAt = System.currentTimeMillis();
+        persisted.setTraceId(trace.traceId);
+        if (trace.clientSentAt > 0) {
+            persisted.setClientTimestamp(trace.clientSentAt);
+        }
+        traces.put(persisted.getId(), trace);
+
+        record(ingestToPersist, trace.persistedAt - trace.ingestAt);
+        if (trace.clientSentAt > 0 && trace.clientSentAt <= trace.ingestAt
+                && trace.ingestAt - trace.clientSentAt <= maxClientSkewMs) {
+            record(sendToPersist, trace.persistedAt - trace.clientSentAt);
+        }
+    }
+
+    /**
+     * Сообщение отправлено в WebSocket получателя
+     */
+    public void onFanout(MessageDto message) {
+        if (message.getTraceId() == null) {
+            return;
+        }
+        Trace trace = traces.getIfPresent(message.getId());
+        if (trace != null) {
+            trace.fanoutAt = System.currentTimeMillis();
+            record(persistToFanout, trace.fanoutAt - trace.persistedAt);
+        }
+    }
+
+    /**
+     * Досылка при подключении (UndeliveredReplayService). DTO из БД без traceId - трасса ищется по id.
+     * Отдельный отрезок: в него входит время, пока получатель был офлайн
+     */
+    public void onReplayed(List<MessageDto> messages) {
+        if (traces.estimatedSize() == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (MessageDto message : messages) {
+            Trace trace = traces.getIfPresent(message.getId());
+            if (trace != null && trace.fanoutAt == 0) {
+                trace.fanoutAt = now;
+                record(persistToReplay, now - trace.persistedAt);
+            }
+        }
+    }
+
+    /**
+     * Подтверждения DELIVERED / READ от получателя
+     */
+    public void onStatusChanged(List<MessageDto> updatedMessages) {
+        if (traces.estimatedSize() == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (MessageDto message : updatedMessages) {
+            Trace trace = traces.getIfPresent(message.getId());
+            if (trace == null) {
+                continue;
+            }
+
+            if ("DELIVERED".equals(message.getStatus())) {
+                trace.deliveredAt = now;
+                record(persistToDelivered, now - trace.persistedAt);
+                if (trace.fanoutAt > 0) {
+                    record(fanoutToDelivered, now - trace.fanoutAt);
+                }
+            } else if ("READ".equals(message.getStatus())) {
+                if (trace.deliveredAt > 0) {
+                    record(deliveredToRead, now - trace.deliveredAt);
+                }
+                traces.invalidate(message.getId());
+            }
+        }
+    }
+
+    private void record(Timer timer, long millis) {
+        if (millis >= 0) {
+            timer.record(millis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.messenger.messengerserver.service;
 
+import com.messenger.messengerserver.dto.ConversationPageDto;
 import com.messenger.messengerserver.dto.MessageDto;
 import com.messenger.messengerserver.dto.MessageStatusBatchUpdateDto;
 import com.messenger.messengerserver.dto.MessageStatusUpdateDto;
@@ -8,16 +9,35 @@ import com.messenger.messengerserver.model.Message;
 import com.messenger.messengerserver.model.MessageStatus;
 import com.messenger.messengerserver.model.User;
 import com.messenger.messengerserver.repository.MessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 @Service
 public class MessageService {
 
+    private static final Logger log = LoggerFactory.getLogger(MessageService.class);
+
+    private static final int MAX_PAGE_SIZE = 200;
+
+    private static final long CONVERSATION_KEYS_CHECK_INTERVAL_MS = 30_000;
+
     @Autowired
     private MessageRepository messageRepository;
 
@@ -27,6 +47,15 @@ public class MessageService {
     @Autowired
     private MessageMapper messageMapper;
 
+    @Autowired
+    private MessageWriteBuffer messageWriteBuffer;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+
     @Transactional
     public Message saveMessage(String content, String senderUsername, String receiverUsername) {
         User sender = userService.findByUsername(senderUsername)
@@ -38,16 +67,131 @@ public class MessageService {
         return messageRepository.save(message);
     }
 
+    /**
+     * Приём сообщения из /app/chat: отправитель/получатель берутся по закэшированным ID,
+     * статус SENT и isRead=false выставлены сразу, запись идёт через write-behind буфер.
+     * Future завершается после коммита batch'а, в который попало сообщение
+     */
+    public CompletableFuture<MessageDto> ingestMessage(String content, String senderUsername, String receiverUsername) {
+        Long senderId = userService.findUserId(senderUsername)
+                .orElseThrow(() -> new RuntimeException("Sender not found"));
+        Long receiverId = userService.findUserId(receiverUsername)
+                .orElseThrow(() -> new RuntimeException("Receiver not found"));
+
+        Message message = new Message();
+        message.setContent(content);
+        message.setStatus(MessageStatus.SENT);
+        message.setIsRead(false);
+
+        // Отметка до коммита: пересборка счётчиков, прочитавшая сообщение из БД раньше инкремента, не запишется
+        unreadCounterService.beforeMessageStored(receiverUsername);
+        return messageWriteBuffer.submit(message, senderId, receiverId)
+                .whenComplete((saved, error) -> {
+                    if (error != null) {
+                        unreadCounterService.onMessageStoreFailed(receiverUsername);
+                    }
+                })
+                .thenApply(saved -> messageMapper.toDto(saved, senderUsername, receiverUsername));
+    }
+
+    // Пока ConversationKeyBackfillService не заполнил conversation_key у старых сообщений,
+    // история читается по участникам - иначе старые сообщения пропали бы из диалогов
+    private volatile boolean conversationKeysComplete;
+    private final AtomicLong nextConversationKeysCheckAt = new AtomicLong();
+
     public List<Message> getConversation(String user1, String user2) {
-        return messageRepository.findConversationByUsernames(user1, user2);
+        if (!conversationKeysComplete()) {
+            return messageRepository.findConversationByUsernames(user1, user2);
+        }
+        return findConversationKey(user1, user2)
+                .map(messageRepository::findConversationByKey)
+                .orElse(Collections.emptyList());
+    }
+
+    /**
+     * Страница истории диалога по курсору (id сообщения).
+     * Без курсоров - последние limit сообщений; before - более старые; after - более новые
+     */
+    @Transactional(readOnly = true)
+    public ConversationPageDto getConversationPage(String user1, String user2, Long beforeId, Long afterId, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // Берём на одно больше, чтобы узнать, есть ли продолжение
+        PageRequest pageRequest = PageRequest.of(0, pageSize + 1);
+
+        Optional<Long> userId1 = userService.findUserId(user1);
+        Optional<Long> userId2 = userService.findUserId(user2);
+        if (userId1.isEmpty() || userId2.isEmpty()) {
+            return new ConversationPageDto(Collections.emptyList(), null, null, false);
+        }
+
+        long cursor = afterId != null ? afterId : (beforeId != null ? beforeId : Long.MAX_VALUE);
+        List<Message> messages;
+        if (conversationKeysComplete()) {
+            String conversationKey = Message.conversationKey(userId1.get(), userId2.get());
+            messages = afterId != null
+                    ? messageRepository.findConversationPageAfter(conversationKey, cursor, pageRequest)
+                    : messageRepository.findConversationPageBefore(conversationKey, cursor, pageRequest);
+        } else {
+            messages = afterId != null
+                    ? messageRepository.findConversationPageAfterByParticipants(userId1.get(), userId2.get(), cursor, pageRequest)
+                    : messageRepository.findConversationPageBeforeByParticipants(userId1.get(), userId2.get(), cursor, pageRequest);
+        }
+
+        boolean hasMore = messages.size() > pageSize;
+        List<Message> page = new ArrayList<>(hasMore ? messages.subList(0, pageSize) : messages);
+        if (afterId == null) {
+            // Запрос "до курсора" идёт по убыванию id - отдаём клиенту в хронологическом порядке
+            Collections.reverse(page);
+        }
+
+        List<MessageDto> dtos = page.stream()
+                .map(messageMapper::toDto)
+                .collect(Collectors.toList());
+
+        Long oldestId = dtos.isEmpty() ? null : dtos.get(0).getId();
+        Long newestId = dtos.isEmpty() ? null : dtos.get(dtos.size() - 1).getId();
+        return new ConversationPageDto(dtos, oldestId, newestId, hasMore);
+    }
+
+    // Проверка в БД не чаще раза в CONVERSATION_KEYS_CHECK_INTERVAL_MS; после завершения - больше не ходим
+    private boolean conversationKeysComplete() {
+        if (conversationKeysComplete) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        long next = nextConversationKeysCheckAt.get();
+        if (now < next || !nextConversationKeysCheckAt.compareAndSet(next, now + CONVERSATION_KEYS_CHECK_INTERVAL_MS)) {
+            return false;
+        }
+        if (!messageRepository.existsByConversationKeyIsNullAndSenderIsNotNullAndReceiverIsNotNull()) {
+            conversationKeysComplete = true;
+            log.info("✅ All messages have conversation_key, history reads use the conversation index");
+        }
+        return conversationKeysComplete;
+    }
+
+    private Optional<String> findConversationKey(String user1, String user2) {
+        Optional<Long> userId1 = userService.findUserId(user1);
+        Optional<Long> userId2 = userService.findUserId(user2);
+        if (userId1.isEmpty() || userId2.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(Message.conversationKey(userId1.get(), userId2.get()));
     }
 
     @Transactional
     public void markAsRead(Long messageId) {
-        Message message = messageRepository.findById(messageId)
+        Message message = messageRepository.findByIdWithUsers(messageId)
                 .orElseThrow(() -> new RuntimeException("Message not found"));
+        boolean wasUnread = !Boolean.TRUE.equals(message.getIsRead());
         message.setIsRead(true);
         messageRepository.save(message);
+
+        if (wasUnread) {
+            unreadCounterService.onMessagesRead(message.getReceiver().getUsername(),
+                    message.getSender().getUsername(), 1);
+            conversationSummaryService.onStatusChanged(List.of(messageMapper.toDto(message)));
+        }
     }
 
     public List<Message> getUnreadMessages(String username) {
@@ -55,7 +199,11 @@ public class MessageService {
     }
 
     public long getUnreadCount(String username) {
-        return messageRepository.findUnreadMessagesByUsername(username).size();
+        return unreadCounterService.getTotalUnread(username);
+    }
+
+    public Map<String, Long> getUnreadCountsByConversation(String username) {
+        return unreadCounterService.getUnreadByConversation(username);
     }
 
     public Message getLastMessage(String user1, String user2) {
@@ -84,58 +232,108 @@ public class MessageService {
         MessageStatus newStatus = MessageStatus.valueOf(statusUpdate.getStatus());
 
         if (newStatus.ordinal() > message.getStatus().ordinal()) {
+            boolean wasUnread = !Boolean.TRUE.equals(message.getIsRead());
             message.setStatus(newStatus);
 
             if (newStatus == MessageStatus.READ) {
                 message.setIsRead(true);
+                if (wasUnread) {
+                    unreadCounterService.onMessagesRead(statusUpdate.getUsername(),
+                            message.getSender().getUsername(), 1);
+                }
             }
 
             message = updateMessage(message);
 
-            return messageMapper.toDto(message);
+            MessageDto updated = messageMapper.toDto(message);
+            conversationSummaryService.onStatusChanged(List.of(updated));
+            return updated;
         }
         return null;
     }
 
+    /**
+     * Пачка статусов одним набором запросов: SELECT ... FOR UPDATE строк, которые реально меняются,
+     * и один UPDATE с тем же условием. Раньше было 2 запроса на каждый ID
+     */
     @Transactional
     public List<MessageDto> processStatusBatchUpdate(MessageStatusBatchUpdateDto batchUpdate) {
-        List<Long> messageIds = batchUpdate.getMessageIds();
-        String statusStr = batchUpdate.getStatus();
         String username = batchUpdate.getUsername();
+        MessageStatus newStatus = MessageStatus.valueOf(batchUpdate.getStatus());
 
-        MessageStatus newStatus = MessageStatus.valueOf(statusStr);
-        List<MessageDto> updatedMessages = new ArrayList<>();
+        List<Long> messageIds = batchUpdate.getMessageIds();
+        if (messageIds == null || messageIds.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-        for (Long messageId : messageIds) {
-            try {
-                Message message = getMessageWithUsers(messageId);
+        Long receiverId = userService.findUserId(username)
+                .orElseThrow(() -> new RuntimeException("Receiver not found"));
 
-                if (!message.getReceiver().getUsername().equals(username)) {
-                    System.err.println("⚠️ Unauthorized status update for message " + messageId +
-                            ": " + username + " is not receiver");
-                    continue;
-                }
+        // Статусы только растут: SENT -> DELIVERED -> READ
+        List<MessageStatus> lowerStatuses = Arrays.stream(MessageStatus.values())
+                .filter(status -> status.ordinal() < newStatus.ordinal())
+                .collect(Collectors.toList());
+        if (lowerStatuses.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-                if (newStatus.ordinal() > message.getStatus().ordinal()) {
-                    message.setStatus(newStatus);
+        Set<Long> uniqueIds = new LinkedHashSet<>(messageIds);
+        List<Message> candidates = messageRepository.findForStatusUpdate(uniqueIds, receiverId, lowerStatuses);
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-                    if (newStatus == MessageStatus.READ) {
-                        message.setIsRead(true);
-                    }
+        Map<Long, String> senderUsernames = userService.findUsernamesByIds(candidates.stream()
+                .map(message -> message.getSender().getId())
+                .collect(Collectors.toSet()));
 
-                    message = updateMessage(message);
+        // DTO собираем до UPDATE: после него контекст очищается и сущности отсоединены
+        List<MessageDto> updatedMessages = new ArrayList<>(candidates.size());
+        Map<String, Long> readCountBySender = new HashMap<>();
+        for (Message message : candidates) {
+            String senderUsername = senderUsernames.get(message.getSender().getId());
+            MessageDto dto = messageMapper.toDto(message, senderUsername, username);
 
-                    updatedMessages.add(messageMapper.toDto(message));
+            if (newStatus == MessageStatus.READ) {
+                if (!Boolean.TRUE.equals(message.getIsRead())) {
+                    readCountBySender.merge(senderUsername, 1L, Long::sum);
                 }
-            } catch (Exception e) {
-                System.err.println("❌ Error processing message " + messageId + ": " + e.getMessage());
+                dto.setIsRead(true);
             }
+            dto.setStatus(newStatus.name());
+            updatedMessages.add(dto);
         }
 
+        List<Long> candidateIds = candidates.stream().map(Message::getId).collect(Collectors.toList());
+        if (newStatus == MessageStatus.READ) {
+            messageRepository.updateStatusBatchAndMarkRead(candidateIds, receiverId, newStatus, lowerStatuses);
+        } else {
+            messageRepository.updateStatusBatch(candidateIds, receiverId, newStatus, lowerStatuses);
+        }
+
+        readCountBySender.forEach((sender, count) -> unreadCounterService.onMessagesRead(username, sender, count));
+        conversationSummaryService.onStatusChanged(updatedMessages);
+
+        if (candidates.size() < uniqueIds.size()) {
+            log.debug("⚠️ Batch status {} from {}: {} of {} messages skipped (not receiver or status already higher)",
+                    newStatus, username, uniqueIds.size() - candidates.size(), uniqueIds.size());
+        }
         return updatedMessages;
     }
 
     public List<Message> getUndeliveredMessages(String username) {
         return messageRepository.findByReceiverUsernameAndStatus(username, MessageStatus.SENT);
     }
+
+    /**
+     * Страница недоставленных (SENT) сообщений с id > afterId, отправитель и получатель загружены
+     */
+    @Transactional(readOnly = true)
+    public List<MessageDto> getUndeliveredPage(Long receiverId, Long afterId, int pageSize) {
+        return messageRepository.findByReceiverAndStatusAfter(receiverId, MessageStatus.SENT, afterId,
+                        PageRequest.of(0, pageSize))
+                .stream()
+                .map(messageMapper::toDto)
+                .collect(Collectors.toList());
+    }
 }
\ No newline at end of file
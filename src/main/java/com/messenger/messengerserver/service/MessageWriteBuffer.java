@@ -0,0 +1,186 @@
+package com.messenger.messengerserver.service;
+
+import com.messenger.messengerserver.model.Message;
+import com.messenger.messengerserver.util.SnowflakeIdGenerator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind буфер для сообщений (group commit).
+ * Сообщения копятся до batchSize штук или flushIntervalMs миллисекунд и вставляются
+ * одним JDBC batch в одной транзакции. Future каждого сообщения завершается только
+ * после коммита его batch'а - отправитель получает подтверждение SENT после записи в БД.
+ */
+@Service
+public class MessageWriteBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageWriteBuffer.class);
+
+    public static final String INSERT_SQL =
+            "INSERT INTO messages (id, content, timestamp, is_read, type, status, sender_id, receiver_id, conversation_key) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final BlockingQueue<PendingMessage> queue;
+
+    private volatile boolean running;
+    private Thread flusherThread;
+
+    public MessageWriteBuffer(JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${messenger.persistence.batch-size:100}") int batchSize,
+                              @Value("${messenger.persistence.flush-interval-ms:5}") long flushIntervalMs,
+                              @Value("${messenger.persistence.queue-capacity:10000}") int queueCapacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        flusherThread = new Thread(this::flushLoop, "msg-write-behind");
+        flusherThread.setDaemon(true);
+        flusherThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        flusherThread.interrupt();
+        flusherThread.join(TimeUnit.SECONDS.toMillis(10));
+
+        // Всё, что осталось после потока записи (не успел или пришло в момент остановки), - отказ, а не вечное ожидание
+        List<PendingMessage> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        leftover.forEach(p -> p.future().completeExceptionally(stoppedError()));
+    }
+
+    /**
+     * Поставить сообщение в очередь на запись. ID назначается сразу.
+     */
+    public CompletableFuture<Message> submit(Message message, Long senderId, Long receiverId) {
+        message.setId(SnowflakeIdGenerator.nextId());
+
+        PendingMessage pending = new PendingMessage(message, senderId, receiverId, new CompletableFuture<>());
+        if (!running) {
+            pending.future().completeExceptionally(stoppedError());
+        } else if (!queue.offer(pending)) {
+            pending.future().completeExceptionally(
+                    new IllegalStateException("Message write buffer is full, try again later"));
+        } else if (!running && queue.remove(pending)) {
+            // Остановка началась между проверкой и offer: если элемент ещё в очереди, его уже никто не заберёт.
+            // Если remove не удался - сообщение взял поток записи или финальный drain в stop(), future завершат они
+            pending.future().completeExceptionally(stoppedError());
+        }
+        return pending.future();
+    }
+
+    private static IllegalStateException stoppedError() {
+        return new IllegalStateException("Message write buffer is stopped");
+    }
+
+    private void flushLoop() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Добираем batch, пока не истекло окно группировки
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Остановка: дописываем то, что уже в очереди
+                queue.drainTo(batch);
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingMessage> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> insertBatch(batch));
+            batch.forEach(p -> p.future().complete(p.message()));
+        } catch (Exception batchError) {
+            log.error("❌ [WRITE-BEHIND] Batch of {} failed, retrying one by one: {}",
+                    batch.size(), batchError.getMessage());
+
+            // Одно плохое сообщение не должно ронять весь batch
+            for (PendingMessage pending : batch) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> insertBatch(List.of(pending)));
+                    pending.future().complete(pending.message());
+                } catch (Exception e) {
+                    pending.future().completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private void insertBatch(List<PendingMessage> batch) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), this::bindInsert);
+    }
+
+    private void bindInsert(PreparedStatement ps, PendingMessage pending) throws SQLException {
+        Message message = pending.message();
+        ps.setLong(1, message.getId());
+        ps.setString(2, message.getContent());
+        ps.setTimestamp(3, Timestamp.valueOf(message.getTimestamp()));
+        ps.setBoolean(4, Boolean.TRUE.equals(message.getIsRead()));
+        ps.setString(5, message.getType().name());
+        ps.setString(6, message.getStatus().name());
+        ps.setLong(7, pending.senderId());
+        ps.setLong(8, pending.receiverId());
+        ps.setString(9, Message.conversationKey(pending.senderId(), pending.receiverId()));
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    private record PendingMessage(Message message, Long senderId, Long receiverId,
+                                  CompletableFuture<Message> future) {
+    }
+}
@@ -0,0 +1,207 @@
+package com.messenger.messengerserver.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Метрики конвейера сообщений (/actuator/prometheus). Метры создаются один раз - на горячем пути
+ * только record/increment. Перцентили и гистограммы для всех messenger.* задаются
+ * management.metrics.distribution.* в application.properties
+ */
+@Component
+public class MessagingMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    // Этапы обработки сообщения: запись в БД, проверка присутствия, отправка в WebSocket, постановка push.
+    // Тег outcome - успешные и упавшие вызовы в разных рядах, ошибки не искажают перцентили
+    private final Stage persist;
+    private final Stage presenceCheck;
+    private final Stage websocketSend;
+    private final Stage fcmEnqueue;
+
+    private final Timer statusUpdate;
+    private final Timer statusBatchUpdate;
+
+    private final Timer sessionConnect;
+    private final Timer sessionDisconnect;
+
+    private final Counter dispatchRejected;
+
+    // Вызов sendEach и исход по каждому уведомлению
+    private final Timer pushSend;
+    private final Map<PushTransport.Outcome, Counter> pushOutcomes = new EnumMap<>(PushTransport.Outcome.class);
+
+    private final Map<String, Timer> redisPresenceCalls = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rateLimitRejections = new ConcurrentHashMap<>();
+
+    public MessagingMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+
+        persist = stage("persist");
+        presenceCheck = stage("presence");
+        websocketSend = stage("websocket");
+        fcmEnqueue = stage("fcm");
+
+        statusUpdate = Timer.builder("messenger.status.update")
+                .description("Обработка смены статуса сообщений")
+                .tag("mode", "single")
+                .register(meterRegistry);
+        statusBatchUpdate = Timer.builder("messenger.status.update")
+                .description("Обработка смены статуса сообщений")
+                .tag("mode", "batch")
+                .register(meterRegistry);
+
+        sessionConnect = Timer.builder("messenger.ws.session")
+                .description("Обработка подключения/отключения STOMP сессии")
+                .tag("event", "connect")
+                .register(meterRegistry);
+        sessionDisconnect = Timer.builder("messenger.ws.session")
+                .description("Обработка подключения/отключения STOMP сессии")
+                .tag("event", "disconnect")
+                .register(meterRegistry);
+
+        dispatchRejected = Counter.builder("messenger.dispatch.rejected")
+                .description("Доставки получателю, отложенные до досылки из-за переполнения messageDispatchExecutor")
+                .register(meterRegistry);
+
+        pushSend = Timer.builder("messenger.push.send")
+                .description("Вызов FCM sendEach для пачки уведомлений")
+                .register(meterRegistry);
+        for (PushTransport.Outcome outcome : PushTransport.Outcome.values()) {
+            pushOutcomes.put(outcome, Counter.builder("messenger.push.outcomes")
+                    .description("Исходы отправки push-уведомлений: sent / unregistered / retryable / failed")
+                    .tag("outcome", outcome.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    private Stage stage(String stage) {
+        return new Stage(stageTimer(stage, "success"), stageTimer(stage, "failure"));
+    }
+
+    private Timer stageTimer(String stage, String outcome) {
+        return Timer.builder("messenger.message.stage")
+                .description("Этапы обработки сообщения")
+                .tag("stage", stage)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    public Stage persist() {
+        return persist;
+    }
+
+    public Stage presenceCheck() {
+        return presenceCheck;
+    }
+
+    public Stage websocketSend() {
+        return websocketSend;
+    }
+
+    public Stage fcmEnqueue() {
+        return fcmEnqueue;
+    }
+
+    public Timer pushSend() {
+        return pushSend;
+    }
+
+    public void pushOutcome(PushTransport.Outcome outcome) {
+        pushOutcomes.get(outcome).increment();
+    }
+
+    public Timer statusUpdate() {
+        return statusUpdate;
+    }
+
+    public Timer statusBatchUpdate() {
+        return statusBatchUpdate;
+    }
+
+    public Timer sessionConnect() {
+        return sessionConnect;
+    }
+
+    public Timer sessionDisconnect() {
+        return sessionDisconnect;
+    }
+
+    public Counter dispatchRejected() {
+        return dispatchRejected;
+    }
+
+    /**
+     * Обращения UserPresenceService к Redis: connect, disconnect, get, mget
+     */
+    public Timer redisPresence(String operation) {
+        return redisPresenceCalls.computeIfAbsent(operation, op -> Timer.builder("messenger.presence.redis")
+                .description("Запросы присутствия в Redis")
+                .tag("operation", op)
+                .register(meterRegistry));
+    }
+
+    /**
+     * Отказы RateLimiter: user, ip, anon
+     */
+    public void rateLimitRejected(String scope) {
+        rateLimitRejections.computeIfAbsent(scope, s -> Counter.builder("messenger.ratelimit.rejected")
+                .description("Запросы, отклонённые ограничением частоты")
+                .tag("scope", s)
+                .register(meterRegistry))
+                .increment();
+    }
+
+    /**
+     * Этап с двумя таймерами по исходу. record(...) выбирает таймер по тому, бросил ли вызов исключение
+     */
+    public static final class Stage {
+
+        private final Timer success;
+        private final Timer failure;
+
+        private Stage(Timer success, Timer failure) {
+            this.success = success;
+            this.failure = failure;
+        }
+
+        public Timer success() {
+            return success;
+        }
+
+        public Timer failure() {
+            return failure;
+        }
+
+        public Timer outcome(Throwable error) {
+            return error == null ? success : failure;
+        }
+
+        public <T> T record(Supplier<T> action) {
+            Timer.Sample sample = Timer.start();
+            boolean completed = false;
+            try {
+                T result = action.get();
+                completed = true;
+                return result;
+            } finally {
+                sample.stop(completed ? success : failure);
+            }
+        }
+
+        public void record(Runnable action) {
+            record(() -> {
+                action.run();
+                return null;
+            });
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.messenger.messengerserver.service;
+
+import com.messenger.messengerserver.dto.PresenceDeltaDto;
+import com.messenger.messengerserver.dto.PresenceSnapshotDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Рассылка изменений онлайн-статуса дельтами вместо полного списка.
+ * Подключения/отключения копятся в окне messenger.presence.delta-window-ms (последнее состояние
+ * пользователя побеждает) и уходят одним сообщением в /topic/presence.delta с глобальным seq.
+ * Клиент, заметивший пропуск seq, берёт снапшот: GET /api/users/online/snapshot.
+ *
+ * seq берётся INCR'ом в момент отправки, а дельты разных узлов идут к клиенту разными путями:
+ * дельта с меньшим seq может прийти позже большей. Клиент держит пришедшие не по порядку дельты
+ * в буфере, применяет их по возрастанию seq и запрашивает снапшот, только если пропуск
+ * не закрылся за короткое время (порядка окна отправки). Дельта с seq не больше уже применённого
+ * отбрасывается.
+ *
+ * Старые клиенты подписаны на /topic/online.users (полный список): пока включён
+ * messenger.presence.legacy-topic-enabled, полный список уходит туда раз в окно, если оно было не пустым.
+ */
+@Service
+public class PresenceBroadcastService {
+
+    private static final Logger log = LoggerFactory.getLogger(PresenceBroadcastService.class);
+
+    public static final String DELTA_DESTINATION = "/topic/presence.delta";
+    public static final String LEGACY_DESTINATION = "/topic/online.users";
+
+    private static final String SEQUENCE_KEY = "presence:seq";
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private UserPresenceService userPresenceService;
+
+    // Совместимость с клиентами, не знающими дельт; выключить, когда все перейдут на /topic/presence.delta
+    @Value("${messenger.presence.legacy-topic-enabled:true}")
+    private boolean legacyTopicEnabled;
+
+    // username -> true (online) / false (offline), порядок событий сохраняется
+    private Map<String, Boolean> pending = new LinkedHashMap<>();
+
+    public void onJoined(String username) {
+        record(username, true);
+    }
+
+    public void onLeft(String username) {
+        record(username, false);
+    }
+
+    private synchronized void record(String username, boolean online) {
+        pending.remove(username);
+        pending.put(username, online);
+    }
+
+    @Scheduled(fixedDelayString = "${messenger.presence.delta-window-ms:250}")
+    public void flush() {
+        Map<String, Boolean> window;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            window = pending;
+            pending = new LinkedHashMap<>();
+        }
+
+        List<String> joined = new ArrayList<>();
+        List<String> left = new ArrayList<>();
+        window.forEach((username, online) -> (online ? joined : left).add(username));
+
+        try {
+            Long seq = redisTemplate.opsForValue().increment(SEQUENCE_KEY);
+            PresenceDeltaDto delta = new PresenceDeltaDto(seq != null ? seq : 0L, joined, left,
+                    System.currentTimeMillis());
+            messagingTemplate.convertAndSend(DELTA_DESTINATION, delta);
+
+            log.debug("📡 [PRESENCE] Delta #{}: +{} / -{}", delta.getSeq(), joined.size(), left.size());
+        } catch (Exception e) {
+            // Клиенты увидят пропуск seq и перезапросят снапшот
+            log.error("❌ [PRESENCE] Error sending delta: {}", e.getMessage());
+        }
+
+        if (legacyTopicEnabled) {
+            try {
+                messagingTemplate.convertAndSend(LEGACY_DESTINATION, userPresenceService.getAllOnlineUsers());
+            } catch (Exception e) {
+                log.error("❌ [PRESENCE] Error sending online users list: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * seq читается до списка: дельты с большим seq применяются поверх снапшота идемпотентно
+     */
+    public PresenceSnapshotDto getSnapshot() {
+        String seq = redisTemplate.opsForValue().get(SEQUENCE_KEY);
+        List<String> onlineUsers = userPresenceService.getAllOnlineUsers();
+        return new PresenceSnapshotDto(seq != null ? Long.parseLong(seq) : 0L, onlineUsers);
+    }
+}
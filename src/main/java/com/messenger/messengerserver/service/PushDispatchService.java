@@ -0,0 +1,305 @@
+package com.messenger.messengerserver.service;
+
+import com.google.firebase.messaging.Message;
+import com.messenger.messengerserver.model.User;
+import com.messenger.messengerserver.repository.UserRepository;
+import com.messenger.messengerserver.util.LogThrottle;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Асинхронная отправка push-уведомлений.
+ * Запросы копятся в ограниченной очереди; воркеры забирают их пачками до MAX_BATCH_SIZE
+ * (лимит sendEach), одним запросом загружают токены и отправляют пачку через PushTransport.
+ * Временные ошибки повторяются с экспоненциальной задержкой, недействительные токены удаляются.
+ * Срочные уведомления (входящий звонок) идут через отдельную очередь и поток без linger -
+ * не ждут за пачками и не вытесняются при переполнении основной очереди.
+ */
+@Service
+public class PushDispatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(PushDispatchService.class);
+
+    public static final int MAX_BATCH_SIZE = 500;
+
+    private static final int URGENT_QUEUE_CAPACITY = 1000;
+
+    // Переполнение очереди - на каждом уведомлении, в лог не чаще раза в 10 секунд
+    private static final LogThrottle QUEUE_FULL_LOG = new LogThrottle(Duration.ofSeconds(10));
+
+    /**
+     * Сборка сообщения, когда токен получателя уже известен.
+     * users - получатель и связанные пользователи (отправитель, звонящий), загруженные вместе с пачкой
+     */
+    @FunctionalInterface
+    public interface MessageFactory {
+        Message build(String token, Map<String, User> users);
+    }
+
+    private final PushTransport transport;
+    private final UserRepository userRepository;
+    private final int workerCount;
+    private final long lingerMs;
+    private final int maxAttempts;
+    private final long retryBackoffMs;
+    private final BlockingQueue<PushTask> queue;
+    private final BlockingQueue<PushTask> urgentQueue = new ArrayBlockingQueue<>(URGENT_QUEUE_CAPACITY);
+
+    private final List<Thread> workers = new ArrayList<>();
+    private ScheduledExecutorService retryScheduler;
+    private volatile boolean running;
+
+    public PushDispatchService(PushTransport transport,
+                               UserRepository userRepository,
+                               @Value("${messenger.push.workers:2}") int workerCount,
+                               @Value("${messenger.push.linger-ms:10}") long lingerMs,
+                               @Value("${messenger.push.max-attempts:3}") int maxAttempts,
+                               @Value("${messenger.push.retry-backoff-ms:500}") long retryBackoffMs,
+                               @Value("${messenger.push.queue-capacity:10000}") int queueCapacity) {
+        this.transport = transport;
+        this.userRepository = userRepository;
+        this.workerCount = workerCount;
+        this.lingerMs = lingerMs;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMs = retryBackoffMs;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "push-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            startWorker(() -> workerLoop(queue, lingerMs), "push-dispatch-" + i);
+        }
+        startWorker(() -> workerLoop(urgentQueue, 0), "push-urgent");
+    }
+
+    private void startWorker(Runnable loop, String name) {
+        Thread worker = new Thread(loop, name);
+        worker.setDaemon(true);
+        worker.start();
+        workers.add(worker);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        retryScheduler.shutdownNow();
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    public boolean enqueue(String recipientUsername, MessageFactory factory) {
+        return enqueue(recipientUsername, Collections.emptySet(), factory);
+    }
+
+    /**
+     * Поставить уведомление в очередь. false - очередь переполнена, уведомление отброшено
+     * (push - best effort, сообщение уже сохранено и придёт при подключении)
+     */
+    public boolean enqueue(String recipientUsername, Collection<String> relatedUsernames, MessageFactory factory) {
+        PushTask task = new PushTask(recipientUsername, Set.copyOf(relatedUsernames), factory, false, null, null, 0);
+        if (!running || !queue.offer(task)) {
+            long skipped = QUEUE_FULL_LOG.tryAcquire();
+            if (skipped >= 0) {
+                log.warn("⚠️ [PUSH] Queue is full, dropping notification for {} ({} more since last warning)",
+                        recipientUsername, skipped);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Срочное уведомление (входящий звонок): своя очередь и поток, отправка без ожидания пачки.
+     * Отброшенный звонок логируется как WARN
+     */
+    public boolean enqueueUrgent(String recipientUsername, Collection<String> relatedUsernames, MessageFactory factory) {
+        PushTask task = new PushTask(recipientUsername, Set.copyOf(relatedUsernames), factory, true, null, null, 0);
+        if (!running || !urgentQueue.offer(task)) {
+            log.warn("⚠️ [PUSH] Urgent queue is full, dropping urgent notification for {}", recipientUsername);
+            return false;
+        }
+        return true;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    private void workerLoop(BlockingQueue<PushTask> queue, long lingerMs) {
+        List<PushTask> batch = new ArrayList<>(MAX_BATCH_SIZE);
+
+        while (running) {
+            try {
+                PushTask first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Короткое окно, чтобы собрать в пачку уведомления от одновременных сообщений
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < MAX_BATCH_SIZE) {
+                    queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= MAX_BATCH_SIZE || remaining <= 0) {
+                        break;
+                    }
+                    PushTask next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            try {
+                processBatch(batch);
+            } catch (Exception e) {
+                log.error("❌ [PUSH] Error processing batch of {}: {}", batch.size(), e.getMessage());
+            }
+            batch.clear();
+        }
+    }
+
+    private void processBatch(List<PushTask> batch) {
+        List<PushTask> ready = resolveTokens(batch);
+        if (ready.isEmpty()) {
+            return;
+        }
+
+        List<PushTransport.Outcome> outcomes = transport.sendEach(
+                ready.stream().map(PushTask::message).collect(Collectors.toList()));
+
+        int sent = 0;
+        for (int i = 0; i < ready.size(); i++) {
+            PushTask task = ready.get(i);
+            PushTransport.Outcome outcome = i < outcomes.size() ? outcomes.get(i) : PushTransport.Outcome.RETRYABLE;
+
+            switch (outcome) {
+                case SENT:
+                    sent++;
+                    break;
+                case UNREGISTERED:
+                    invalidateToken(task);
+                    break;
+                case RETRYABLE:
+                    scheduleRetry(task);
+                    break;
+                default:
+                    log.warn("❌ [PUSH] Notification for {} rejected", task.recipientUsername());
+            }
+        }
+
+        log.debug("📤 [PUSH] Batch sent: {}/{}", sent, ready.size());
+    }
+
+    // Токены и связанные пользователи - одним запросом на всю пачку
+    private List<PushTask> resolveTokens(List<PushTask> batch) {
+        Set<String> usernames = new HashSet<>();
+        for (PushTask task : batch) {
+            if (task.message() == null) {
+                usernames.add(task.recipientUsername());
+                usernames.addAll(task.relatedUsernames());
+            }
+        }
+
+        Map<String, User> users = usernames.isEmpty()
+                ? Collections.emptyMap()
+                : userRepository.findByUsernameIn(usernames).stream()
+                        .collect(Collectors.toMap(User::getUsername, Function.identity()));
+
+        List<PushTask> ready = new ArrayList<>(batch.size());
+        for (PushTask task : batch) {
+            if (task.message() != null) {
+                ready.add(task);
+                continue;
+            }
+
+            User recipient = users.get(task.recipientUsername());
+            String token = recipient != null ? recipient.getFcmToken() : null;
+            if (token == null || token.isEmpty()) {
+                log.debug("⚠️ [PUSH] No FCM token for user: {}", task.recipientUsername());
+                continue;
+            }
+
+            try {
+                ready.add(task.withMessage(token, task.factory().build(token, users)));
+            } catch (Exception e) {
+                log.error("❌ [PUSH] Error building notification for {}: {}", task.recipientUsername(), e.getMessage());
+            }
+        }
+        return ready;
+    }
+
+    private void scheduleRetry(PushTask task) {
+        int attempt = task.attempt() + 1;
+        if (attempt >= maxAttempts || !running) {
+            log.warn("❌ [PUSH] Giving up on notification for {} after {} attempts", task.recipientUsername(), attempt);
+            return;
+        }
+
+        // Экспоненциальная задержка с джиттером, чтобы повторы не шли одной волной
+        long delay = retryBackoffMs * (1L << (attempt - 1));
+        delay += ThreadLocalRandom.current().nextLong(retryBackoffMs / 2 + 1);
+
+        try {
+            retryScheduler.schedule(() -> {
+                BlockingQueue<PushTask> target = task.urgent() ? urgentQueue : queue;
+                if (!target.offer(task.withAttempt(attempt))) {
+                    long skipped = QUEUE_FULL_LOG.tryAcquire();
+                    if (skipped >= 0) {
+                        log.warn("⚠️ [PUSH] Queue is full, dropping retry for {} ({} more since last warning)",
+                                task.recipientUsername(), skipped);
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Остановка приложения
+        }
+    }
+
+    private void invalidateToken(PushTask task) {
+        try {
+            int cleared = userRepository.clearFcmToken(task.recipientUsername(), task.token());
+            log.info("🗑️ [PUSH] Unregistered FCM token removed for {} ({})", task.recipientUsername(), cleared);
+        } catch (Exception e) {
+            log.error("❌ [PUSH] Error removing FCM token for {}: {}", task.recipientUsername(), e.getMessage());
+        }
+    }
+
+    private record PushTask(String recipientUsername, Set<String> relatedUsernames, MessageFactory factory,
+                            boolean urgent, String token, Message message, int attempt) {
+
+        PushTask withMessage(String token, Message message) {
+            return new PushTask(recipientUsername, relatedUsernames, factory, urgent, token, message, attempt);
+        }
+
+        PushTask withAttempt(int attempt) {
+            return new PushTask(recipientUsername, relatedUsernames, factory, urgent, token, message, attempt);
+        }
+    }
+}
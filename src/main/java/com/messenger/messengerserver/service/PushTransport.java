@@ -0,0 +1,25 @@
+package com.messenger.messengerserver.service;
+
+import com.google.firebase.messaging.Message;
+
+import java.util.List;
+
+/**
+ * Транспорт push-уведомлений. В проде - Firebase (FirebasePushTransport),
+ * в тестах и нагрузочных прогонах можно подставить локальную реализацию.
+ */
+public interface PushTransport {
+
+    enum Outcome {
+        SENT,
+        UNREGISTERED,   // токен больше не действителен - удаляем у пользователя
+        RETRYABLE,      // временная ошибка (UNAVAILABLE, INTERNAL, QUOTA_EXCEEDED) - повторяем с задержкой
+        FAILED
+    }
+
+    /**
+     * Отправка пачки (не больше PushDispatchService.MAX_BATCH_SIZE).
+     * Результат - по одному Outcome на сообщение, в том же порядке
+     */
+    List<Outcome> sendEach(List<Message> messages);
+}
@@ -0,0 +1,25 @@
+package com.messenger.messengerserver.service;
+
+/**
+ * Ограничение частоты запросов по ключу (ip:..., user:...) - скользящее окно
+ * messenger.ratelimit.window-seconds. Реализация выбирается messenger.ratelimit.backend:
+ * redis (общий лимит для всех узлов, RedisRateLimiter) или local (LocalRateLimiter)
+ */
+public interface RateLimiter {
+
+    /**
+     * @return true, если запрос укладывается в limit за окно (и засчитан), false - лимит превышен
+     */
+    boolean tryAcquire(String key, int limit);
+
+    /**
+     * Два лимита на один запрос (ip + user): второй проверяется, только если первый пропустил.
+     * @return 0 - запрос укладывается в оба лимита и засчитан в обоих, 1 - отказ по первому, 2 - по второму
+     */
+    default int tryAcquire(String firstKey, int firstLimit, String secondKey, int secondLimit) {
+        if (!tryAcquire(firstKey, firstLimit)) {
+            return 1;
+        }
+        return tryAcquire(secondKey, secondLimit) ? 0 : 2;
+    }
+}
@@ -0,0 +1,190 @@
+package com.messenger.messengerserver.service;
+
+import com.google.firebase.messaging.Message;
+import com.messenger.messengerserver.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Команда SERVER_RESTARTED пользователям, которые были онлайн до перезапуска.
+ * Токены загружаются одним запросом (частями по IN_CHUNK_SIZE), пачки до 500 сообщений
+ * отправляются параллельно с общим ограничением скорости messenger.reconnect.rate-per-second.
+ */
+@Service
+public class ReconnectBroadcastService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReconnectBroadcastService.class);
+
+    private static final int IN_CHUNK_SIZE = 1000;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PushTransport pushTransport;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${messenger.reconnect.parallelism:4}")
+    private int parallelism;
+
+    @Value("${messenger.reconnect.rate-per-second:500}")
+    private int ratePerSecond;
+
+    // Прогресс последней рассылки (gauge в /actuator/prometheus)
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger total = new AtomicInteger();
+
+    // Темп отправки: момент, раньше которого следующий пакет не уходит (общий для всех потоков)
+    private long nextSendAtNanos;
+
+    @PostConstruct
+    public void registerGauges() {
+        meterRegistry.gauge("messenger.reconnect.processed", processed);
+        meterRegistry.gauge("messenger.reconnect.total", total);
+    }
+
+    public void broadcastAsync(List<String> usernames) {
+        Thread thread = new Thread(() -> broadcast(usernames), "reconnect-broadcast");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void broadcast(List<String> usernames) {
+        long startedAt = System.currentTimeMillis();
+        Map<String, String> tokens = loadTokens(new LinkedHashSet<>(usernames));
+        log.info("📱 [RECONNECT] {} users, {} with FCM token", usernames.size(), tokens.size());
+        if (tokens.isEmpty()) {
+            return;
+        }
+
+        Counter sentCounter = meterRegistry.counter("messenger.reconnect.notifications", "outcome", "sent");
+        Counter unregisteredCounter = meterRegistry.counter("messenger.reconnect.notifications", "outcome", "unregistered");
+        Counter failedCounter = meterRegistry.counter("messenger.reconnect.notifications", "outcome", "failed");
+        processed.set(0);
+        total.set(tokens.size());
+
+        String timestamp = String.valueOf(System.currentTimeMillis());
+        List<List<Map.Entry<String, String>>> batches = partition(new ArrayList<>(tokens.entrySet()),
+                PushDispatchService.MAX_BATCH_SIZE);
+        List<Map.Entry<String, String>> retryable = Collections.synchronizedList(new ArrayList<>());
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            Thread thread = new Thread(runnable, "reconnect-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<?>> futures = new ArrayList<>(batches.size());
+            for (List<Map.Entry<String, String>> batch : batches) {
+                futures.add(executor.submit(() -> {
+                    acquire(batch.size());
+                    List<PushTransport.Outcome> outcomes = pushTransport.sendEach(buildMessages(batch, timestamp));
+
+                    for (int i = 0; i < batch.size(); i++) {
+                        Map.Entry<String, String> entry = batch.get(i);
+                        switch (outcomes.get(i)) {
+                            case SENT -> sentCounter.increment();
+                            case UNREGISTERED -> {
+                                unregisteredCounter.increment();
+                                userRepository.clearFcmToken(entry.getKey(), entry.getValue());
+                            }
+                            case RETRYABLE -> retryable.add(entry);
+                            default -> failedCounter.increment();
+                        }
+                    }
+
+                    int done = processed.addAndGet(batch.size());
+                    log.debug("📱 [RECONNECT] Progress: {}/{}", done, tokens.size());
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            // Один повтор для временных ошибок - после основной волны
+            if (!retryable.isEmpty()) {
+                log.info("🔁 [RECONNECT] Retrying {} notifications", retryable.size());
+                for (List<Map.Entry<String, String>> batch : partition(retryable, PushDispatchService.MAX_BATCH_SIZE)) {
+                    acquire(batch.size());
+                    List<PushTransport.Outcome> outcomes = pushTransport.sendEach(buildMessages(batch, timestamp));
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (outcomes.get(i) == PushTransport.Outcome.SENT) {
+                            sentCounter.increment();
+                        } else {
+                            failedCounter.increment();
+                        }
+                    }
+                }
+            }
+
+            log.info("✅ [RECONNECT] Done in {} ms: sent={}, unregistered={}, failed={}",
+                    System.currentTimeMillis() - startedAt, (long) sentCounter.count(),
+                    (long) unregisteredCounter.count(), (long) failedCounter.count());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("❌ [RECONNECT] Broadcast failed: {}", e.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Map<String, String> loadTokens(Set<String> usernames) {
+        Map<String, String> tokens = new LinkedHashMap<>();
+        for (List<String> chunk : partition(new ArrayList<>(usernames), IN_CHUNK_SIZE)) {
+            for (Object[] row : userRepository.findFcmTokensByUsernameIn(chunk)) {
+                tokens.put((String) row[0], (String) row[1]);
+            }
+        }
+        return tokens;
+    }
+
+    private List<Message> buildMessages(List<Map.Entry<String, String>> batch, String timestamp) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (Map.Entry<String, String> entry : batch) {
+            messages.add(Message.builder()
+                    .setToken(entry.getValue())
+                    .putData("type", "SERVER_RESTARTED")
+                    .putData("action", "DO_BACKGROUND")
+                    .putData("timestamp", timestamp)
+                    .build());
+        }
+        return messages;
+    }
+
+    // Общий для всех потоков лимит: пачка из n сообщений занимает n / ratePerSecond секунд
+    private void acquire(int permits) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long sendAt = Math.max(now, nextSendAtNanos);
+            nextSendAtNanos = sendAt + TimeUnit.SECONDS.toNanos(permits) / Math.max(1, ratePerSecond);
+            waitNanos = sendAt - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private static <T> List<List<T>> partition(List<T> items, int size) {
+        List<List<T>> parts = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += size) {
+            parts.add(items.subList(i, Math.min(i + size, items.size())));
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,120 @@
+package com.messenger.messengerserver.service;
+
+import com.messenger.messengerserver.util.LogThrottle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Скользящее окно в Redis - лимит общий для всех узлов.
+ * ratelimit:{key}:{номер окна} - счётчик окна, живёт два окна.
+ * Redis недоступен - считаем локально (LocalRateLimiter), а не пропускаем всё подряд
+ */
+@Component
+@ConditionalOnProperty(name = "messenger.ratelimit.backend", havingValue = "redis", matchIfMissing = true)
+public class RedisRateLimiter implements RateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisRateLimiter.class);
+
+    private static final String RATE_LIMIT_KEY = "ratelimit:";
+
+    // Пока Redis лежит, ошибка на каждом запросе - в лог не чаще раза в 30 секунд
+    private static final LogThrottle FALLBACK_LOG = new LogThrottle(Duration.ofSeconds(30));
+
+    // Проверка и инкремент за один запрос; отклонённые запросы не засчитываются
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "local current = tonumber(redis.call('GET', KEYS[1]) or '0') " +
+            "local previous = tonumber(redis.call('GET', KEYS[2]) or '0') " +
+            "if previous * tonumber(ARGV[1]) + current >= tonumber(ARGV[2]) then return 0 end " +
+            "redis.call('INCR', KEYS[1]) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[3]) " +
+            "return 1",
+            Long.class);
+
+    // Оба окна одним запросом (ip + user на каждом авторизованном REST вызове).
+    // Засчитывается только запрос, пропущенный обоими лимитами. Ключи должны быть на одном инстансе Redis
+    private static final RedisScript<Long> ACQUIRE_BOTH_SCRIPT = new DefaultRedisScript<>(
+            "local weight = tonumber(ARGV[1]) " +
+            "local function over(currentKey, previousKey, limit) " +
+            "  local current = tonumber(redis.call('GET', currentKey) or '0') " +
+            "  local previous = tonumber(redis.call('GET', previousKey) or '0') " +
+            "  return previous * weight + current >= tonumber(limit) " +
+            "end " +
+            "if over(KEYS[1], KEYS[2], ARGV[2]) then return 1 end " +
+            "if over(KEYS[3], KEYS[4], ARGV[3]) then return 2 end " +
+            "redis.call('INCR', KEYS[1]) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[4]) " +
+            "redis.call('INCR', KEYS[3]) " +
+            "redis.call('PEXPIRE', KEYS[3], ARGV[4]) " +
+            "return 0",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    private final long windowMs;
+    private final LocalRateLimiter fallback;
+
+    public RedisRateLimiter(@Value("${messenger.ratelimit.window-seconds:60}") long windowSeconds,
+                            @Value("${messenger.ratelimit.local.max-keys:100000}") long maxKeys) {
+        this.windowMs = Duration.ofSeconds(windowSeconds).toMillis();
+        this.fallback = new LocalRateLimiter(windowSeconds, maxKeys);
+    }
+
+    @Override
+    public boolean tryAcquire(String key, int limit) {
+        long now = System.currentTimeMillis();
+        long index = now / windowMs;
+        double previousWeight = 1.0 - (double) (now % windowMs) / windowMs;
+
+        try {
+            Long allowed = redisTemplate.execute(ACQUIRE_SCRIPT,
+                    List.of(RATE_LIMIT_KEY + key + ":" + index, RATE_LIMIT_KEY + key + ":" + (index - 1)),
+                    String.valueOf(previousWeight),
+                    String.valueOf(limit),
+                    String.valueOf(windowMs * 2));
+            return allowed != null && allowed == 1L;
+        } catch (Exception e) {
+            logFallback(e);
+            return fallback.tryAcquire(key, limit);
+        }
+    }
+
+    @Override
+    public int tryAcquire(String firstKey, int firstLimit, String secondKey, int secondLimit) {
+        long now = System.currentTimeMillis();
+        long index = now / windowMs;
+        double previousWeight = 1.0 - (double) (now % windowMs) / windowMs;
+
+        try {
+            Long rejected = redisTemplate.execute(ACQUIRE_BOTH_SCRIPT,
+                    List.of(RATE_LIMIT_KEY + firstKey + ":" + index, RATE_LIMIT_KEY + firstKey + ":" + (index - 1),
+                            RATE_LIMIT_KEY + secondKey + ":" + index, RATE_LIMIT_KEY + secondKey + ":" + (index - 1)),
+                    String.valueOf(previousWeight),
+                    String.valueOf(firstLimit),
+                    String.valueOf(secondLimit),
+                    String.valueOf(windowMs * 2));
+            return rejected != null ? rejected.intValue() : 1;
+        } catch (Exception e) {
+            logFallback(e);
+            return fallback.tryAcquire(firstKey, firstLimit, secondKey, secondLimit);
+        }
+    }
+
+    private static void logFallback(Exception e) {
+        long skipped = FALLBACK_LOG.tryAcquire();
+        if (skipped >= 0) {
+            log.warn("❌ [RATE LIMIT] Redis unavailable, using local limits: {} ({} more since last warning)",
+                    e.getMessage(), skipped);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.messenger.messengerserver.service;
+
+import com.messenger.messengerserver.dto.MessageDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Досылка недоставленных сообщений при подключении.
+ * Читает из БД страницами (keyset по id) и притормаживает, когда исходящий канал WebSocket
+ * не успевает отдавать кадры клиентам.
+ * По умолчанию - по одному сообщению в /queue/messages, как раньше. Пачки в /queue/messages.batch
+ * получает клиент, приславший в CONNECT заголовок {@value #BATCH_CAPABILITY_HEADER}: true,
+ * или все клиенты, если messenger.replay.frame-size > 1.
+ */
+@Service
+public class UndeliveredReplayService {
+
+    private static final Logger log = LoggerFactory.getLogger(UndeliveredReplayService.class);
+
+    // Оценка размера сообщения в JSON: текст (до 3 байт на символ UTF-8) + служебные поля
+    private static final int MESSAGE_OVERHEAD_BYTES = 256;
+
+    // Заголовок STOMP CONNECT: клиент умеет принимать /queue/messages.batch
+    public static final String BATCH_CAPABILITY_HEADER = "accept-messages-batch";
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private MessageLatencyTracker latencyTracker;
+
+    @Autowired
+    @Qualifier("messageReplayExecutor")
+    private ThreadPoolTaskExecutor replayExecutor;
+
+    @Autowired
+    @Qualifier("clientOutboundChannelExecutor")
+    private ThreadPoolTaskExecutor clientOutboundExecutor;
+
+    @Value("${messenger.replay.page-size:500}")
+    private int pageSize;
+
+    // 1 - старый режим: по одному сообщению в /queue/messages
+    @Value("${messenger.replay.frame-size:1}")
+    private int frameSize;
+
+    // Размер пачки для клиентов с BATCH_CAPABILITY_HEADER
+    @Value("${messenger.replay.batch-frame-size:50}")
+    private int batchFrameSize;
+
+    @Value("${spring.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${messenger.replay.max-outbound-queue:500}")
+    private int maxOutboundQueue;
+
+    @Value("${messenger.replay.backpressure-wait-ms:20}")
+    private long backpressureWaitMs;
+
+    // Сколько всего ждать разгрузки перед одним кадром. Дольше - досылка прерывается,
+    // недоставленное остаётся в БД и уйдёт при следующем подключении
+    @Value("${messenger.replay.backpressure-max-wait-ms:5000}")
+    private long backpressureMaxWaitMs;
+
+    // Сообщения идут на user destination и попадают во все сессии пользователя - одной досылки достаточно
+    private final Set<String> replaysInProgress = ConcurrentHashMap.newKeySet();
+
+    public void replayAsync(String username, boolean acceptsBatch) {
+        int maxFrameMessages = acceptsBatch ? Math.max(frameSize, batchFrameSize) : frameSize;
+
+        if (!replaysInProgress.add(username)) {
+            log.debug("📨 [REPLAY] Already in progress for {}", username);
+            return;
+        }
+
+        try {
+            replayExecutor.execute(() -> {
+                try {
+                    replay(username, maxFrameMessages);
+                } finally {
+                    replaysInProgress.remove(username);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            replaysInProgress.remove(username);
+            log.warn("❌ [REPLAY] Executor is full, skipping replay for {}", username);
+        }
+    }
+
+    private void replay(String username, int maxFrameMessages) {
+        Optional<Long> receiverId = userService.findUserId(username);
+        if (receiverId.isEmpty()) {
+            return;
+        }
+
+        // Кадр не должен занимать больше четверти буфера отправки сессии
+        int maxFrameBytes = Math.max(sendBufferSizeLimit / 4, MESSAGE_OVERHEAD_BYTES);
+        long startedAt = System.currentTimeMillis();
+        long lastId = 0L;
+        int sent = 0;
+        boolean abandoned = false;
+
+        try {
+            while (true) {
+                List<MessageDto> page = messageService.getUndeliveredPage(receiverId.get(), lastId, pageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+
+                List<MessageDto> frame = new ArrayList<>(maxFrameMessages);
+                int frameBytes = 0;
+                for (MessageDto message : page) {
+                    int messageBytes = estimateSize(message);
+                    if (!frame.isEmpty() && (frame.size() >= maxFrameMessages || frameBytes + messageBytes > maxFrameBytes)) {
+                        if (!sendFrame(username, frame, maxFrameMessages)) {
+                            abandoned = true;
+                            break;
+                        }
+                        sent += frame.size();
+                        frame = new ArrayList<>(maxFrameMessages);
+                        frameBytes = 0;
+                    }
+                    frame.add(message);
+                    frameBytes += messageBytes;
+                }
+                if (abandoned || !sendFrame(username, frame, maxFrameMessages)) {
+                    abandoned = true;
+                    break;
+                }
+                sent += frame.size();
+
+                lastId = page.get(page.size() - 1).getId();
+                if (page.size() < pageSize) {
+                    break;
+                }
+            }
+
+            if (abandoned) {
+                log.warn("⏳ [REPLAY] Outbound channel still saturated after {} ms, abandoning replay for {} after {} messages",
+                        backpressureMaxWaitMs, username, sent);
+            } else if (sent > 0) {
+                log.info("📨 [REPLAY] Sent {} undelivered messages to {} in {} ms",
+                        sent, username, System.currentTimeMillis() - startedAt);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("❌ [REPLAY] Error sending undelivered messages to {} after {} messages: {}",
+                    username, sent, e.getMessage());
+        }
+    }
+
+    // false - исходящий канал так и не разгрузился, кадр не отправлен
+    private boolean sendFrame(String username, List<MessageDto> frame, int maxFrameMessages) throws InterruptedException {
+        if (frame.isEmpty()) {
+            return true;
+        }
+        if (!awaitOutboundCapacity()) {
+            return false;
+        }
+
+        if (maxFrameMessages <= 1) {
+            for (MessageDto message : frame) {
+                messagingTemplate.convertAndSendToUser(username, "/queue/messages", message);
+            }
+        } else {
+            messagingTemplate.convertAndSendToUser(username, "/queue/messages.batch", frame);
+        }
+        latencyTracker.onReplayed(frame);
+        return true;
+    }
+
+    // Ждём, пока очередь исходящего канала не разгрузится (медленные клиенты упираются в send buffer),
+    // но не дольше backpressureMaxWaitMs: иначе поток досылки занят без срока, пока канал забит чужими сессиями
+    private boolean awaitOutboundCapacity() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backpressureMaxWaitMs);
+        while (clientOutboundExecutor.getThreadPoolExecutor().getQueue().size() > maxOutboundQueue) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            Thread.sleep(backpressureWaitMs);
+        }
+        return true;
+    }
+
+    private int estimateSize(MessageDto message) {
+        int contentLength = message.getContent() != null ? message.getContent().length() : 0;
+        return contentLength * 3 + MESSAGE_OVERHEAD_BYTES;
+    }
+}
@@ -0,0 +1,315 @@
+package com.messenger.messengerserver.service;
+
+import com.messenger.messengerserver.repository.MessageRepository;
+import com.messenger.messengerserver.util.LogThrottle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-model непрочитанных сообщений в Redis:
+ * unread:{username}        - hash: собеседник -> количество непрочитанных от него
+ * unread:{username}:total  - общее количество (ответ /unread/count за O(1))
+ * unread:{username}:ver    - версия: растёт при каждом изменении счётчиков пользователя
+ * unread:{username}:pending - изменения, уже отмеченные, но ещё не применённые (до коммита и до
+ *                            инкремента/декремента после него); с TTL на случай падения узла
+ * Счётчики меняются инкрементально. Если их нет (новый пользователь, потеря данных Redis) - собираются
+ * из messages при первом чтении.
+ * Пересборка записывает снимок из БД, только если версия не изменилась с момента до запроса к БД
+ * и нет отмеченных изменений. Изменение отмечается до коммита, а применяется после: если коммит
+ * попал в снимок, а применение ещё не прошло, pending > 0 и снимок не записывается - иначе сообщение
+ * было бы посчитано дважды (или прочтение вычтено дважды). Не записанный снимок пересобирается повторно
+ */
+@Service
+public class UnreadCounterService {
+
+    private static final String UNREAD_KEY = "unread:";
+    private static final String TOTAL_SUFFIX = ":total";
+    private static final String VERSION_SUFFIX = ":ver";
+    private static final String PENDING_SUFFIX = ":pending";
+
+    private static final Logger log = LoggerFactory.getLogger(UnreadCounterService.class);
+
+    // Ошибки Redis на каждом сообщении - в лог не чаще раза в 30 секунд
+    private static final LogThrottle REDIS_ERROR_LOG = new LogThrottle(Duration.ofSeconds(30));
+
+    private static final int REBUILD_ATTEMPTS = 3;
+
+    // Изменение, не применённое за это время (узел упал между коммитом и Redis), больше не блокирует пересборку
+    private static final Duration PENDING_TTL = Duration.ofSeconds(60);
+
+    // Не ниже нуля: ключ мог истечь по TTL раньше применения
+    private static final String RELEASE_PENDING =
+            "if redis.call('DECR', KEYS[4]) <= 0 then redis.call('DEL', KEYS[4]) end ";
+
+    private static final RedisScript<Long> MARK_PENDING_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('INCR', KEYS[4]) " +
+            "redis.call('PEXPIRE', KEYS[4], ARGV[1]) " +
+            "return 1",
+            Long.class);
+
+    private static final RedisScript<Long> RELEASE_PENDING_SCRIPT = new DefaultRedisScript<>(
+            RELEASE_PENDING + "return 1",
+            Long.class);
+
+    // {username} - hash tag: все ключи пользователя в одном слоте Redis Cluster.
+    // Если счётчиков ещё нет - не создаём частичные, их целиком соберёт rebuildForUser.
+    // Версия растёт в любом случае: пересборка, начатая до этого инкремента, не перезапишет счётчики
+    private static final RedisScript<Long> INCREMENT_SCRIPT = new DefaultRedisScript<>(
+            RELEASE_PENDING +
+            "redis.call('INCR', KEYS[3]) " +
+            "if redis.call('EXISTS', KEYS[2]) == 0 then return -1 end " +
+            "redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2]) " +
+            "return redis.call('INCRBY', KEYS[2], ARGV[2])",
+            Long.class);
+
+    // Уменьшение не ниже нуля (счётчик мог быть сброшен или пересобран)
+    private static final RedisScript<Long> DECREMENT_SCRIPT = new DefaultRedisScript<>(
+            RELEASE_PENDING +
+            "redis.call('INCR', KEYS[3]) " +
+            "local current = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '0') " +
+            "local delta = math.min(current, tonumber(ARGV[2])) " +
+            "if delta <= 0 then return 0 end " +
+            "if redis.call('HINCRBY', KEYS[1], ARGV[1], -delta) <= 0 then redis.call('HDEL', KEYS[1], ARGV[1]) end " +
+            "if redis.call('DECRBY', KEYS[2], delta) < 0 then redis.call('SET', KEYS[2], 0) end " +
+            "return delta",
+            Long.class);
+
+    // Снимок из БД: ARGV[1] - версия, прочитанная до запроса к БД ('' - ключа не было), ARGV[2] - total,
+    // дальше пары собеседник/количество. Версия изменилась или есть неприменённые изменения - 0, снимок устарел
+    private static final RedisScript<Long> INSTALL_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('GET', KEYS[3]) or '') ~= ARGV[1] then return 0 end " +
+            "if tonumber(redis.call('GET', KEYS[4]) or '0') > 0 then return 0 end " +
+            "redis.call('DEL', KEYS[1]) " +
+            "if #ARGV > 2 then redis.call('HSET', KEYS[1], unpack(ARGV, 3)) end " +
+            "redis.call('SET', KEYS[2], ARGV[2]) " +
+            "return 1",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    /**
+     * Сообщение для receiver будет записано: вызывается до постановки в буфер записи (до коммита).
+     * Дальше - onMessageStored после коммита или onMessageStoreFailed
+     */
+    public void beforeMessageStored(String receiverUsername) {
+        markPending(receiverUsername);
+    }
+
+    /**
+     * Новое сообщение от sender для receiver (после коммита)
+     */
+    public void onMessageStored(String receiverUsername, String senderUsername) {
+        try {
+            redisTemplate.execute(INCREMENT_SCRIPT,
+                    keys(receiverUsername), senderUsername, "1");
+        } catch (Exception e) {
+            logRedisError("incrementing counter for", receiverUsername, e);
+        }
+    }
+
+    public void onMessageStoreFailed(String receiverUsername) {
+        releasePending(receiverUsername);
+    }
+
+    /**
+     * receiver прочитал count сообщений от sender. Внутри транзакции - отмечается сразу,
+     * применяется после коммита (при откате - только снимается отметка)
+     */
+    public void onMessagesRead(String receiverUsername, String senderUsername, long count) {
+        if (count <= 0) {
+            return;
+        }
+
+        Runnable decrement = () -> {
+            try {
+                redisTemplate.execute(DECREMENT_SCRIPT,
+                        keys(receiverUsername), senderUsername, String.valueOf(count));
+            } catch (Exception e) {
+                logRedisError("decrementing counter for", receiverUsername, e);
+            }
+        };
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            decrement.run();
+            return;
+        }
+
+        markPending(receiverUsername);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    decrement.run();
+                } else {
+                    releasePending(receiverUsername);
+                }
+            }
+        });
+    }
+
+    private void markPending(String username) {
+        try {
+            redisTemplate.execute(MARK_PENDING_SCRIPT, keys(username), String.valueOf(PENDING_TTL.toMillis()));
+        } catch (Exception e) {
+            logRedisError("marking pending change for", username, e);
+        }
+    }
+
+    private void releasePending(String username) {
+        try {
+            redisTemplate.execute(RELEASE_PENDING_SCRIPT, keys(username));
+        } catch (Exception e) {
+            logRedisError("releasing pending change for", username, e);
+        }
+    }
+
+    public long getTotalUnread(String username) {
+        String total = redisTemplate.opsForValue().get(totalKey(username));
+        if (total == null) {
+            // Счётчиков нет (новый пользователь или Redis потерял данные) - собираем из БД
+            return rebuildForUser(username).values().stream().mapToLong(Long::longValue).sum();
+        }
+        return Long.parseLong(total);
+    }
+
+    public Map<String, Long> getUnreadByConversation(String username) {
+        if (Boolean.FALSE.equals(redisTemplate.hasKey(totalKey(username)))) {
+            return rebuildForUser(username);
+        }
+
+        Map<Object, Object> raw = redisTemplate.opsForHash().entries(countersKey(username));
+        Map<String, Long> counts = new HashMap<>();
+        raw.forEach((partner, count) -> counts.put((String) partner, Long.parseLong((String) count)));
+        return counts;
+    }
+
+    /**
+     * Пересборка счётчиков одного пользователя из messages (счётчиков нет в Redis).
+     * Если во время запроса к БД счётчики изменились - повтор; после REBUILD_ATTEMPTS неудач
+     * возвращается снимок без записи, следующее чтение попробует снова
+     */
+    public Map<String, Long> rebuildForUser(String username) {
+        Map<String, Long> counts = new HashMap<>();
+        for (int attempt = 0; attempt < REBUILD_ATTEMPTS; attempt++) {
+            String version = redisTemplate.opsForValue().get(versionKey(username));
+            counts = loadCounts(username);
+            if (install(username, version, counts)) {
+                break;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Сверка существующих счётчиков с messages (по cron, выключено по умолчанию).
+     * Не удаляет и не пересоздаёт ключи: пользователи без счётчиков соберутся при первом чтении,
+     * остальные получают снимок только если их версия не изменилась за время запроса к БД
+     */
+    @Scheduled(cron = "${messenger.unread.reconcile-cron:-}")
+    public void reconcile() {
+        try {
+            long startedAt = System.currentTimeMillis();
+
+            List<String> usernames = new ArrayList<>();
+            try (Cursor<String> cursor = redisTemplate.scan(
+                    ScanOptions.scanOptions().match(UNREAD_KEY + "{*}" + TOTAL_SUFFIX).count(1000).build())) {
+                cursor.forEachRemaining(key -> usernames.add(
+                        key.substring(UNREAD_KEY.length() + 1, key.length() - TOTAL_SUFFIX.length() - 1)));
+            }
+            if (usernames.isEmpty()) {
+                return;
+            }
+
+            // Версии - до запроса к БД
+            List<String> versions = redisTemplate.opsForValue().multiGet(
+                    usernames.stream().map(this::versionKey).toList());
+
+            Map<String, Map<String, Long>> countsByReceiver = new HashMap<>();
+            for (Object[] row : messageRepository.countUnreadByReceiverAndSender()) {
+                countsByReceiver.computeIfAbsent((String) row[0], k -> new HashMap<>())
+                        .put((String) row[1], (Long) row[2]);
+            }
+
+            int installed = 0;
+            for (int i = 0; i < usernames.size(); i++) {
+                String username = usernames.get(i);
+                String version = versions != null ? versions.get(i) : null;
+                if (install(username, version, countsByReceiver.getOrDefault(username, Map.of()))) {
+                    installed++;
+                }
+            }
+
+            log.info("✅ [UNREAD] Counters reconciled for {}/{} users in {} ms",
+                    installed, usernames.size(), System.currentTimeMillis() - startedAt);
+        } catch (Exception e) {
+            log.error("❌ [UNREAD] Error reconciling counters: {}", e.getMessage());
+        }
+    }
+
+    private Map<String, Long> loadCounts(String username) {
+        Map<String, Long> counts = new HashMap<>();
+        for (Object[] row : messageRepository.countUnreadBySenderForReceiver(username)) {
+            counts.put((String) row[0], (Long) row[1]);
+        }
+        return counts;
+    }
+
+    private boolean install(String username, String expectedVersion, Map<String, Long> counts) {
+        long total = counts.values().stream().mapToLong(Long::longValue).sum();
+
+        List<String> args = new ArrayList<>(2 + counts.size() * 2);
+        args.add(expectedVersion != null ? expectedVersion : "");
+        args.add(String.valueOf(total));
+        counts.forEach((partner, count) -> {
+            args.add(partner);
+            args.add(String.valueOf(count));
+        });
+
+        Long result = redisTemplate.execute(INSTALL_SCRIPT, keys(username), args.toArray());
+        return result != null && result == 1L;
+    }
+
+    private List<String> keys(String username) {
+        return List.of(countersKey(username), totalKey(username), versionKey(username),
+                UNREAD_KEY + "{" + username + "}" + PENDING_SUFFIX);
+    }
+
+    private String countersKey(String username) {
+        return UNREAD_KEY + "{" + username + "}";
+    }
+
+    private String totalKey(String username) {
+        return UNREAD_KEY + "{" + username + "}" + TOTAL_SUFFIX;
+    }
+
+    private String versionKey(String username) {
+        return UNREAD_KEY + "{" + username + "}" + VERSION_SUFFIX;
+    }
+
+    private static void logRedisError(String action, String username, Exception e) {
+        long skipped = REDIS_ERROR_LOG.tryAcquire();
+        if (skipped >= 0) {
+            log.error("❌ [UNREAD] Error {} {}: {} ({} more since last error)", action, username, e.getMessage(), skipped);
+        }
+    }
+}
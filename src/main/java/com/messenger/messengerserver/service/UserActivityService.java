@@ -1,11 +1,15 @@
 package com.messenger.messengerserver.service;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class UserActivityService {
 
+    private static final Logger log = LoggerFactory.getLogger(UserActivityService.class);
+
     // Храним текущую активность пользователя: username -> activity
     private final ConcurrentHashMap<String, String> userCurrentActivity = new ConcurrentHashMap<>();
 
@@ -17,13 +21,13 @@ public class UserActivityService {
         if (chatPartner != null) {
             userLastChatPartner.put(username, chatPartner);
         }
-        System.out.println("👤 [" + username + "] activity: " + activity + ", partner: " + chatPartner);
+        log.debug("👤 [{}] activity: {}, partner: {}", username, activity, chatPartner);
     }
 
     public void userDisconnected(String username) {
         userCurrentActivity.remove(username);
         userLastChatPartner.remove(username);
-        System.out.println("👤 [" + username + "] disconnected, cleared activity");
+        log.debug("👤 [{}] disconnected, cleared activity", username);
     }
 
     public boolean isUserInChatWith(String username, String chatPartner) {
@@ -31,7 +35,7 @@ public class UserActivityService {
         String lastPartner = userLastChatPartner.get(username);
 
         boolean result = "ChatActivity".equals(currentActivity) && chatPartner.equals(lastPartner);
-        System.out.println("🔍 Checking if " + username + " is in chat with " + chatPartner + ": " + result);
+        log.trace("🔍 Checking if {} is in chat with {}: {}", username, chatPartner, result);
         return result;
     }
 }
\ No newline at end of file
@@ -1,91 +1,249 @@
 package com.messenger.messengerserver.service;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
 
 @Service
 public class UserPresenceService {
 
+    private static final Logger log = LoggerFactory.getLogger(UserPresenceService.class);
+
     private static final String USER_SESSION_KEY = "user:session:";      // username -> sessionId (одна сессия)
     private static final String ONLINE_USERS_KEY = "online:users";
+    private static final String RABBIT_SESSION_KEY = "session:rabbit:";    // internalSessionId -> RabbitMQ sessionId
 
     private static final Duration SESSION_TTL = Duration.ofMinutes(30);
     private static final Duration ONLINE_TTL = Duration.ofHours(24);
 
+    private static final int INVALIDATION_STRIPES = 1024;
+
+    // Канал изменений присутствия, сообщение: "<username>:online" / "<username>:offline"
+    public static final String STATUS_CHANNEL = "user.status";
+
+    // SET сессии + SADD + EXPIRE + PUBLISH за один запрос
+    private static final RedisScript<Long> CONNECT_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[2]) " +
+            "redis.call('SADD', KEYS[2], ARGV[4]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[3]) " +
+            "redis.call('PUBLISH', ARGV[5], ARGV[4] .. ':online') " +
+            "return 1",
+            Long.class);
+
+    // Compare-and-delete: удаляем сессию, только если она всё ещё наша.
+    // Сессии нет (истёк TTL) - тоже убираем из онлайн списка
+    private static final RedisScript<Long> DISCONNECT_SCRIPT = new DefaultRedisScript<>(
+            "local current = redis.call('GET', KEYS[1]) " +
+            "if current and current ~= ARGV[1] then return 0 end " +
+            "if current then redis.call('DEL', KEYS[1]) end " +
+            "redis.call('SREM', KEYS[2], ARGV[2]) " +
+            "redis.call('PUBLISH', ARGV[3], ARGV[2] .. ':offline') " +
+            "return 1",
+            Long.class);
+
     @Autowired
     private RedisTemplate<String, String> redisTemplate;
 
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Autowired
+    private MessagingMetrics messagingMetrics;
+
+    @Value("${messenger.presence.cache.max-size:100000}")
+    private long cacheMaxSize;
+
+    // Страховка на случай потерянного pub/sub сообщения (разрыв соединения с Redis)
+    @Value("${messenger.presence.cache.ttl-seconds:30}")
+    private long cacheTtlSeconds;
+
+    // Запись старше refresh перечитывается в фоне при обращении: запрос получает текущее значение
+    // и не ждёт Redis (проверка X-Session-Id в JwtAuthenticationFilter на каждом REST вызове)
+    @Value("${messenger.presence.cache.refresh-seconds:10}")
+    private long cacheRefreshSeconds;
+
+    // Near-cache: username -> текущая сессия (пустой Optional - офлайн).
+    // Когерентность между узлами - через PUBLISH в user.status из скриптов connect/disconnect
+    // (новое подключение = завершение старой сессии - сбрасывается на всех узлах)
+    private LoadingCache<String, Optional<String>> sessionCache;
+
+    // Версии ключей по полосам: invalidate() поднимает версию до удаления из кэша.
+    // Пакетная загрузка кладёт результат MGET, только если версия не изменилась с момента чтения -
+    // иначе сброс, пришедший во время MGET, был бы перезаписан устаревшим значением
+    private final AtomicLongArray invalidationVersions = new AtomicLongArray(INVALIDATION_STRIPES);
+
+    @PostConstruct
+    public void initNearCache() {
+        sessionCache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .refreshAfterWrite(Duration.ofSeconds(cacheRefreshSeconds))
+                .expireAfterWrite(Duration.ofSeconds(cacheTtlSeconds))
+                // Загрузка одного ключа атомарна с invalidate: он ждёт её завершения и удаляет результат
+                .build(username -> Optional.ofNullable(messagingMetrics.redisPresence("get")
+                        .record(() -> redisTemplate.opsForValue().get(USER_SESSION_KEY + username))));
+
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> onStatusChanged(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(STATUS_CHANNEL));
+    }
+
+    private void onStatusChanged(String payload) {
+        int separator = payload.lastIndexOf(':');
+        String username = separator > 0 ? payload.substring(0, separator) : payload;
+        invalidate(username);
+    }
+
+    private void invalidate(String username) {
+        invalidationVersions.incrementAndGet(stripe(username));
+        sessionCache.invalidate(username);
+    }
+
+    private static int stripe(String username) {
+        return (username.hashCode() & Integer.MAX_VALUE) % INVALIDATION_STRIPES;
+    }
+
+    private Optional<String> cachedSession(String username) {
+        return sessionCache.get(username);
+    }
+
     /**
      * Подключение пользователя - сохраняем одну сессию
      * Если была старая сессия - перезаписываем
      */
     public void userConnected(String username, String sessionId) {
-        String sessionKey = USER_SESSION_KEY + username;
+        messagingMetrics.redisPresence("connect").record(() -> redisTemplate.execute(CONNECT_SCRIPT,
+                List.of(USER_SESSION_KEY + username, ONLINE_USERS_KEY),
+                sessionId,
+                String.valueOf(SESSION_TTL.getSeconds()),
+                String.valueOf(ONLINE_TTL.getSeconds()),
+                username,
+                STATUS_CHANNEL));
+        invalidate(username);
 
-        // Сохраняем новую сессию (перезаписывает старую)
-        redisTemplate.opsForValue().set(sessionKey, sessionId, SESSION_TTL);
-
-        // Добавляем в список онлайн
-        redisTemplate.opsForSet().add(ONLINE_USERS_KEY, username);
-        redisTemplate.expire(ONLINE_USERS_KEY, ONLINE_TTL);
-
-        System.out.printf("🟢 [Redis] %s connected. Session: %s%n",
-                username, sessionId.substring(0, Math.min(8, sessionId.length())));
+        log.info("🟢 [Redis] {} connected. Session: {}", username, shortId(sessionId));
     }
 
     /**
-     * Отключение пользователя
+     * Отключение пользователя.
+     * false - у пользователя уже другая активная сессия (переподключился с другого устройства),
+     * он остаётся онлайн
      */
-    public void userDisconnected(String username, String sessionId) {
-        String sessionKey = USER_SESSION_KEY + username;
+    public boolean userDisconnected(String username, String sessionId) {
+        Long result = messagingMetrics.redisPresence("disconnect").record(() -> redisTemplate.execute(DISCONNECT_SCRIPT,
+                List.of(USER_SESSION_KEY + username, ONLINE_USERS_KEY),
+                sessionId,
+                username,
+                STATUS_CHANNEL));
 
-        // Проверяем, что это та же сессия
-        String storedSessionId = redisTemplate.opsForValue().get(sessionKey);
+        boolean wentOffline = result != null && result == 1L;
+        invalidate(username);
+        log.info("🔴 [Redis] {} disconnected. Session: {}{}", username, shortId(sessionId),
+                wentOffline ? "" : " (другая сессия активна - остаётся онлайн)");
+        return wentOffline;
+    }
 
-        if (storedSessionId != null && storedSessionId.equals(sessionId)) {
-            redisTemplate.delete(sessionKey);
-        }
+    /**
+     * Соответствие сессий общее для всех узлов: старая сессия могла подключиться к другому узлу
+     */
+    public void saveRabbitSessionId(String internalSessionId, String rabbitSessionId) {
+        redisTemplate.opsForValue().set(RABBIT_SESSION_KEY + internalSessionId, rabbitSessionId, ONLINE_TTL);
+    }
 
-        // Удаляем из онлайн списка
-        redisTemplate.opsForSet().remove(ONLINE_USERS_KEY, username);
+    public String getRabbitSessionId(String internalSessionId) {
+        return redisTemplate.opsForValue().get(RABBIT_SESSION_KEY + internalSessionId);
+    }
 
-        System.out.printf("🔴 [Redis] %s disconnected. Session: %s%n",
-                username, sessionId.substring(0, Math.min(8, sessionId.length())));
+    public void removeRabbitSessionId(String internalSessionId) {
+        redisTemplate.delete(RABBIT_SESSION_KEY + internalSessionId);
     }
 
     /**
      * Проверка, онлайн ли пользователь
      */
     public boolean isUserOnline(String username) {
-        String sessionKey = USER_SESSION_KEY + username;
-        String sessionId = redisTemplate.opsForValue().get(sessionKey);
+        return cachedSession(username).isPresent();
+    }
 
-        boolean isOnline = sessionId != null;
-        System.out.printf("🔍 [Redis] %s online status: %s%n",
-                username, isOnline ? "🟢" : "🔴");
+    /**
+     * Присутствие для целой страницы пользователей: попадания из near-cache,
+     * промахи - одним MGET по ключам сессий
+     */
+    public Set<String> getOnlineAmong(Collection<String> usernames) {
+        if (usernames.isEmpty()) {
+            return Collections.emptySet();
+        }
 
-        return isOnline;
+        Map<String, Optional<String>> sessions = new HashMap<>(sessionCache.getAllPresent(usernames));
+        List<String> missingUsernames = usernames.stream()
+                .filter(username -> !sessions.containsKey(username))
+                .distinct()
+                .collect(Collectors.toList());
+        if (!missingUsernames.isEmpty()) {
+            sessions.putAll(loadSessions(missingUsernames));
+        }
+
+        Set<String> online = new HashSet<>();
+        sessions.forEach((username, session) -> {
+            if (session.isPresent()) {
+                online.add(username);
+            }
+        });
+        return online;
+    }
+
+    private Map<String, Optional<String>> loadSessions(List<String> usernames) {
+        // Версии читаются до MGET: изменение после этого момента запрещает класть значение в кэш
+        long[] versions = new long[usernames.size()];
+        for (int i = 0; i < usernames.size(); i++) {
+            versions[i] = invalidationVersions.get(stripe(usernames.get(i)));
+        }
+
+        List<String> keys = usernames.stream()
+                .map(username -> USER_SESSION_KEY + username)
+                .collect(Collectors.toList());
+        List<String> values = messagingMetrics.redisPresence("mget")
+                .record(() -> redisTemplate.opsForValue().multiGet(keys));
+
+        Map<String, Optional<String>> loaded = new HashMap<>();
+        for (int i = 0; i < usernames.size(); i++) {
+            Optional<String> session = Optional.ofNullable(values != null ? values.get(i) : null);
+            loaded.put(usernames.get(i), session);
+
+            // compute и invalidate берут одну блокировку ключа, а версия поднимается до удаления:
+            // либо сброс удалит вставленное значение, либо вставка увидит новую версию
+            long version = versions[i];
+            sessionCache.asMap().compute(usernames.get(i), (username, current) ->
+                    current == null && invalidationVersions.get(stripe(username)) == version ? session : current);
+        }
+        return loaded;
     }
 
     /**
      * Проверка, активна ли конкретная сессия
      */
     public boolean isSessionActive(String username, String sessionId) {
-        String sessionKey = USER_SESSION_KEY + username;
-        String storedSessionId = redisTemplate.opsForValue().get(sessionKey);
+        String storedSessionId = cachedSession(username).orElse(null);
 
         boolean isActive = storedSessionId != null && storedSessionId.equals(sessionId);
-        if (!isActive && storedSessionId != null) {
-            System.out.printf("[SESSION] ⚠️ Сессия для %s не совпадает. Ожидалась: %s, получена: %s%n",
-                    username, storedSessionId.substring(0, Math.min(8, storedSessionId.length())),
-                    sessionId.substring(0, Math.min(8, sessionId.length())));
+        if (!isActive && storedSessionId != null && log.isDebugEnabled()) {
+            log.debug("[SESSION] ⚠️ Сессия для {} не совпадает. Ожидалась: {}, получена: {}",
+                    username, shortId(storedSessionId), shortId(sessionId));
         }
 
         return isActive;
@@ -95,7 +253,7 @@ public class UserPresenceService {
      * Получить текущую сессию пользователя
      */
     public String getUserSession(String username) {
-        return redisTemplate.opsForValue().get(USER_SESSION_KEY + username);
+        return cachedSession(username).orElse(null);
     }
 
     /**
@@ -106,7 +264,7 @@ public class UserPresenceService {
         if (onlineUsers == null) {
             onlineUsers = new HashSet<>();
         }
-        System.out.printf("📡 [Redis] Online users: %d%n", onlineUsers.size());
+        log.debug("📡 [Redis] Online users: {}", onlineUsers.size());
         return onlineUsers;
     }
 
@@ -125,7 +283,9 @@ public class UserPresenceService {
     public void clearAllUserSessions(String username) {
         redisTemplate.delete(USER_SESSION_KEY + username);
         redisTemplate.opsForSet().remove(ONLINE_USERS_KEY, username);
-        System.out.printf("🗑️ [Redis] All sessions cleared for %s%n", username);
+        redisTemplate.convertAndSend(STATUS_CHANNEL, username + ":offline");
+        invalidate(username);
+        log.info("🗑️ [Redis] All sessions cleared for {}", username);
     }
 
     public void clearAllSessions() {
@@ -134,6 +294,15 @@ public class UserPresenceService {
             redisTemplate.delete(USER_SESSION_KEY + user);
         }
         redisTemplate.delete(ONLINE_USERS_KEY);
-        System.out.printf("🧹 [Redis] Cleared all sessions. Affected users: %d%n", onlineUsers.size());
+        onlineUsers.forEach(user -> redisTemplate.convertAndSend(STATUS_CHANNEL, user + ":offline"));
+        for (int i = 0; i < INVALIDATION_STRIPES; i++) {
+            invalidationVersions.incrementAndGet(i);
+        }
+        sessionCache.invalidateAll();
+        log.info("🧹 [Redis] Cleared all sessions. Affected users: {}", onlineUsers.size());
+    }
+
+    private static String shortId(String sessionId) {
+        return sessionId.substring(0, Math.min(8, sessionId.length()));
     }
 }
\ No newline at end of file
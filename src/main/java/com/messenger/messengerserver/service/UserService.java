@@ -4,6 +4,8 @@ import com.messenger.messengerserver.model.Contact;
 import com.messenger.messengerserver.model.User;
 import com.messenger.messengerserver.repository.ContactRepository;
 import com.messenger.messengerserver.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
@@ -16,6 +18,8 @@ import java.util.concurrent.ConcurrentHashMap;
 @Service
 public class UserService {
 
+    private static final Logger log = LoggerFactory.getLogger(UserService.class);
+
     @Autowired
     private UserRepository userRepository;
 
@@ -31,23 +35,50 @@ public class UserService {
     @Autowired
     private UserActivityService userActivityService;
 
+    @Autowired
+    private ContactIndexService contactIndexService;
+
     private final Map<String, String> userSessionMap = new ConcurrentHashMap<>();
-    private final Map<String, String> internalToRabbitSessionMap = new ConcurrentHashMap<>();
+
+    // username -> id (username неизменяем, поэтому кэш не нужно инвалидировать)
+    private final Map<String, Long> userIdCache = new ConcurrentHashMap<>();
 
     public void setRabbitSessionId(String internalSessionId, String rabbitSessionId) {
-        internalToRabbitSessionMap.put(internalSessionId, rabbitSessionId);
-        System.out.printf("[SESSION] 💾 Сохранено соответствие: %s -> %s%n",
-                internalSessionId, rabbitSessionId);
+        userPresenceService.saveRabbitSessionId(internalSessionId, rabbitSessionId);
+        log.debug("[SESSION] 💾 Сохранено соответствие: {} -> {}", internalSessionId, rabbitSessionId);
     }
 
     public void removeRabbitSessionId(String internalSessionId) {
-        internalToRabbitSessionMap.remove(internalSessionId);
+        userPresenceService.removeRabbitSessionId(internalSessionId);
     }
 
     public Optional<User> findByUsername(String username) {
         return userRepository.findByUsername(username);
     }
 
+    /**
+     * ID пользователя по username без обращения к БД на горячем пути
+     */
+    public Optional<Long> findUserId(String username) {
+        Long cachedId = userIdCache.get(username);
+        if (cachedId != null) {
+            return Optional.of(cachedId);
+        }
+
+        Optional<User> user = userRepository.findByUsername(username);
+        user.ifPresent(u -> userIdCache.put(u.getUsername(), u.getId()));
+        return user.map(User::getId);
+    }
+
+    public Map<Long, String> findUsernamesByIds(Collection<Long> userIds) {
+        Map<Long, String> usernames = new HashMap<>();
+        for (User user : userRepository.findAllById(userIds)) {
+            usernames.put(user.getId(), user.getUsername());
+            userIdCache.put(user.getUsername(), user.getId());
+        }
+        return usernames;
+    }
+
     public List<User> getAllUsers() {
         return userRepository.findAll();
     }
@@ -63,16 +94,15 @@ public class UserService {
         userRepository.save(user);
 
         sendImmediateStatusUpdate(username, false);
-        System.out.println("⏰ Last seen updated for " + username + ": " + user.getLastSeen());
+        log.debug("⏰ Last seen updated for {}: {}", username, user.getLastSeen());
     }
 
     public void terminateOtherSessions(String username, String currentInternalSessionId) {
         String oldInternalSessionId = userPresenceService.getUserSession(username);
         if (oldInternalSessionId != null && !oldInternalSessionId.equals(currentInternalSessionId)) {
-            System.out.printf("[SESSION] 🔒 Завершаем старую сессию для %s: %s%n",
-                    username, oldInternalSessionId);
+            log.info("[SESSION] 🔒 Завершаем старую сессию для {}: {}", username, oldInternalSessionId);
 
-            String oldRabbitSessionId = internalToRabbitSessionMap.get(oldInternalSessionId);
+            String oldRabbitSessionId = userPresenceService.getRabbitSessionId(oldInternalSessionId);
 
             Map<String, Object> logoutMessage = new HashMap<>();
             logoutMessage.put("type", "SESSION_TERMINATED");
@@ -80,15 +110,18 @@ public class UserService {
             logoutMessage.put("timestamp", System.currentTimeMillis());
             logoutMessage.put("targetSessionId", oldRabbitSessionId != null ? oldRabbitSessionId : oldInternalSessionId);
 
-            messagingTemplate.convertAndSend("/topic/session", logoutMessage);
+            // Только старой сессии: клиент подписан на /user/queue/session, что для сессии X
+            // разрешается в /queue/session-userX. Очередь живёт в брокере - доставка с любого узла.
+            // Не convertAndSendToUser с simpSessionId: если старая сессия на другом узле,
+            // локальный реестр отдал бы сообщение всем локальным сессиям пользователя, включая новую
+            messagingTemplate.convertAndSend("/queue/session-user" + oldInternalSessionId, logoutMessage);
 
-            System.out.printf("[SESSION] 📤 Отправлено уведомление в /topic/session для RabbitMQ сессии %s%n",
-                    oldRabbitSessionId != null ? oldRabbitSessionId : oldInternalSessionId);
+            log.debug("[SESSION] 📤 Отправлено уведомление сессии {} (RabbitMQ {})", oldInternalSessionId, oldRabbitSessionId);
         }
     }
 
     public void userConnected(String username, String internalSessionId, String rabbitSessionId) {
-        System.out.printf("[SESSION] 🔗 userConnected: %s, internalSessionId: %s, rabbitSessionId: %s%n",
+        log.debug("[SESSION] 🔗 userConnected: {}, internalSessionId: {}, rabbitSessionId: {}",
                 username, internalSessionId, rabbitSessionId);
 
         setRabbitSessionId(internalSessionId, rabbitSessionId);
@@ -103,19 +136,25 @@ public class UserService {
         user.setLastSeen(null);
         userRepository.save(user);
 
-        System.out.println("👤 " + username + ": 🟢 CONNECTED");
+        log.debug("👤 {}: 🟢 CONNECTED", username);
 
         sendImmediateStatusUpdate(username, true);
-        System.out.println("✅ User connected: " + username);
+        log.debug("✅ User connected: {}", username);
     }
 
-    public void userDisconnected(String username, String internalSessionId) {
+    /**
+     * false - пользователь остался онлайн (активна другая сессия)
+     */
+    public boolean userDisconnected(String username, String internalSessionId) {
         try {
             Thread.sleep(50);
 
             removeRabbitSessionId(internalSessionId);
-            userPresenceService.userDisconnected(username, internalSessionId);
-            userSessionMap.remove(username);
+            if (!userPresenceService.userDisconnected(username, internalSessionId)) {
+                // Пользователь уже подключился новой сессией - не помечаем его офлайн
+                return false;
+            }
+            userSessionMap.remove(username, internalSessionId);
 
             User user = userRepository.findByUsername(username)
                     .orElseThrow(() -> new RuntimeException("User not found"));
@@ -123,8 +162,8 @@ public class UserService {
             user.setLastSeen(LocalDateTime.now());
             userRepository.save(user);
 
-            System.out.println("👤 " + username + ": 🔴 DISCONNECTED (internalSession: " + internalSessionId +
-                    ", last seen: " + formatLastSeenDetailed(user.getLastSeen()) + ")");
+            log.debug("👤 {}: 🔴 DISCONNECTED (internalSession: {}, last seen: {})",
+                    username, internalSessionId, user.getLastSeen());
 
             new Thread(() -> {
                 try {
@@ -135,11 +174,13 @@ public class UserService {
                 }
             }).start();
 
-            System.out.println("🔴 User disconnected: " + username);
+            log.debug("🔴 User disconnected: {}", username);
+            return true;
 
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            System.err.println("❌ Error in userDisconnected: " + e.getMessage());
+            log.error("❌ Error in userDisconnected: {}", e.getMessage());
+            return false;
         }
     }
 
@@ -147,6 +188,10 @@ public class UserService {
         return userPresenceService.isUserOnline(username);
     }
 
+    public Set<String> getOnlineAmong(Collection<String> usernames) {
+        return userPresenceService.getOnlineAmong(usernames);
+    }
+
     public List<String> getOnlineUsers() {
         return new ArrayList<>(userPresenceService.getOnlineUsers());
     }
@@ -199,12 +244,18 @@ public class UserService {
             if (user == null) return;
 
             Map<String, Object> statusUpdate = prepareStatusData(user);
-            messagingTemplate.convertAndSend("/topic/user.events", statusUpdate);
 
-            System.out.println("⚡ IMMEDIATE STATUS: " + username + " -> " +
-                    (statusUpdate.get("online").equals(true) ? "🟢 online" : "🔴 " + statusUpdate.get("lastSeenText")));
+            // Только тем, у кого пользователь в контактах и кто сейчас онлайн.
+            // Получатель может быть подключён к другому узлу - его доставит user destination broadcast
+            Set<String> recipients = userPresenceService.getOnlineAmong(contactIndexService.getWatchers(username));
+            for (String recipient : recipients) {
+                messagingTemplate.convertAndSendToUser(recipient, "/queue/user.events", statusUpdate);
+            }
+
+            log.debug("⚡ IMMEDIATE STATUS: {} -> online={}, lastSeen={} (to {} contacts)",
+                    username, statusUpdate.get("online"), statusUpdate.get("lastSeenText"), recipients.size());
         } catch (Exception e) {
-            System.err.println("❌ Error sending immediate status: " + e.getMessage());
+            log.error("❌ Error sending immediate status: {}", e.getMessage());
         }
     }
 
@@ -257,6 +308,7 @@ public class UserService {
 
         Contact newContact = new Contact(user, contact);
         contactRepository.save(newContact);
+        contactIndexService.onContactChanged(contactUsername);
     }
 
     public void removeContact(String username, String contactUsername) {
@@ -266,6 +318,7 @@ public class UserService {
                 .orElseThrow(() -> new RuntimeException("Contact not found"));
 
         contactRepository.deleteByUserAndContact(user, contact);
+        contactIndexService.onContactChanged(contactUsername);
     }
 
     public void updateAvatarUrl(String username, String avatarUrl) {
@@ -0,0 +1,116 @@
+package com.messenger.messengerserver.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Поиск любой из подстрок без учёта регистра за один проход по входу (Aho–Corasick).
+ * Автомат строится один раз как полная таблица переходов по ASCII: на каждый символ -
+ * одно обращение к массиву, без toLowerCase и без аллокаций. Символ вне ASCII
+ * не входит ни в один шаблон и возвращает автомат в корень
+ */
+public class AhoCorasickMatcher {
+
+    private static final int ALPHABET = 128;
+
+    private final int[][] transitions;
+    private final boolean[] terminal;
+
+    public AhoCorasickMatcher(Collection<String> patterns) {
+        List<int[]> gotos = new ArrayList<>();
+        List<Boolean> outputs = new ArrayList<>();
+        gotos.add(newState());
+        outputs.add(false);
+
+        // Бор из шаблонов (-1 - перехода нет)
+        for (String pattern : patterns) {
+            if (pattern == null || pattern.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                int c = fold(pattern.charAt(i));
+                if (c < 0) {
+                    throw new IllegalArgumentException("Only ASCII patterns are supported: " + pattern);
+                }
+                if (gotos.get(state)[c] < 0) {
+                    gotos.add(newState());
+                    outputs.add(false);
+                    gotos.get(state)[c] = gotos.size() - 1;
+                }
+                state = gotos.get(state)[c];
+            }
+            outputs.set(state, true);
+        }
+
+        int size = gotos.size();
+        transitions = new int[size][];
+        terminal = new boolean[size];
+        int[] failure = new int[size];
+        for (int i = 0; i < size; i++) {
+            transitions[i] = gotos.get(i);
+            terminal[i] = outputs.get(i);
+        }
+
+        // Суффиксные ссылки обходом в ширину, заодно достраиваем недостающие переходы до полного автомата
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int next = transitions[0][c];
+            if (next < 0) {
+                transitions[0][c] = 0;
+            } else {
+                failure[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            // Шаблон, являющийся суффиксом текущего префикса, - тоже совпадение
+            terminal[state] |= terminal[failure[state]];
+            for (int c = 0; c < ALPHABET; c++) {
+                int next = transitions[state][c];
+                if (next < 0) {
+                    transitions[state][c] = transitions[failure[state]][c];
+                } else {
+                    failure[next] = transitions[failure[state]][c];
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * true, если text содержит хотя бы один из шаблонов (без учёта регистра)
+     */
+    public boolean containsAny(String text) {
+        if (text == null) {
+            return false;
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int c = fold(text.charAt(i));
+            state = c < 0 ? 0 : transitions[state][c];
+            if (terminal[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] newState() {
+        int[] state = new int[ALPHABET];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    private static int fold(char c) {
+        if (c >= ALPHABET) {
+            return -1;
+        }
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+}
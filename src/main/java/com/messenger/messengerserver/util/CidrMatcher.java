@@ -0,0 +1,128 @@
+package com.messenger.messengerserver.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collection;
+
+/**
+ * Принадлежность IP одной из подсетей CIDR (192.168.0.0/16, ::1/128 ...) - бинарный бор по битам адреса,
+ * отдельно для IPv4 и IPv6. Проверка - не больше 32/128 шагов по бору
+ */
+public class CidrMatcher {
+
+    private static final class Node {
+        Node zero;
+        Node one;
+        boolean terminal;
+    }
+
+    private final Node ipv4Root = new Node();
+    private final Node ipv6Root = new Node();
+
+    public CidrMatcher(Collection<String> cidrs) {
+        for (String cidr : cidrs) {
+            if (cidr == null || cidr.isBlank()) {
+                continue;
+            }
+            String value = cidr.trim();
+            int slash = value.indexOf('/');
+            byte[] address = parse(slash < 0 ? value : value.substring(0, slash));
+            if (address == null) {
+                throw new IllegalArgumentException("Invalid CIDR: " + cidr);
+            }
+            int prefixLength = slash < 0 ? address.length * 8 : Integer.parseInt(value.substring(slash + 1));
+            if (prefixLength < 0 || prefixLength > address.length * 8) {
+                throw new IllegalArgumentException("Invalid prefix length: " + cidr);
+            }
+            insert(address.length == 4 ? ipv4Root : ipv6Root, address, prefixLength);
+        }
+    }
+
+    /**
+     * true, если ip (текстовый IPv4/IPv6 литерал) входит в одну из подсетей. Не IP - false
+     */
+    public boolean matches(String ip) {
+        byte[] address = parse(ip);
+        if (address == null) {
+            return false;
+        }
+        Node node = address.length == 4 ? ipv4Root : ipv6Root;
+        for (int bit = 0; node != null; bit++) {
+            if (node.terminal) {
+                return true;
+            }
+            if (bit == address.length * 8) {
+                return false;
+            }
+            node = bitAt(address, bit) ? node.one : node.zero;
+        }
+        return false;
+    }
+
+    private static void insert(Node root, byte[] address, int prefixLength) {
+        Node node = root;
+        for (int bit = 0; bit < prefixLength; bit++) {
+            if (bitAt(address, bit)) {
+                node = node.one != null ? node.one : (node.one = new Node());
+            } else {
+                node = node.zero != null ? node.zero : (node.zero = new Node());
+            }
+        }
+        node.terminal = true;
+    }
+
+    private static boolean bitAt(byte[] address, int bit) {
+        return (address[bit >> 3] & (0x80 >> (bit & 7))) != 0;
+    }
+
+    /**
+     * Только литералы: заголовки вроде X-Forwarded-For приходят от клиента,
+     * имя хоста не должно уходить в DNS
+     */
+    static byte[] parse(String ip) {
+        if (ip == null || ip.isEmpty()) {
+            return null;
+        }
+        if (ip.indexOf(':') < 0) {
+            return parseIpv4(ip);
+        }
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            boolean allowed = c == ':' || c == '.' || (c >= '0' && c <= '9') ||
+                    (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+            if (!allowed) {
+                return null;
+            }
+        }
+        try {
+            // ::ffff:a.b.c.d Java возвращает как IPv4 - так и сравниваем
+            return InetAddress.getByName(ip).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private static byte[] parseIpv4(String ip) {
+        byte[] address = new byte[4];
+        int octet = 0;
+        int value = -1;
+        for (int i = 0; i <= ip.length(); i++) {
+            char c = i < ip.length() ? ip.charAt(i) : '.';
+            if (c == '.') {
+                if (value < 0 || octet == 4) {
+                    return null;
+                }
+                address[octet++] = (byte) value;
+                value = -1;
+            } else if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+        }
+        return octet == 4 ? address : null;
+    }
+}
@@ -1,14 +1,30 @@
 package com.messenger.messengerserver.util;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
+import io.jsonwebtoken.io.Decoders;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtUtil {
 
+    private static final Logger log = LoggerFactory.getLogger(JwtUtil.class);
+
     @Value("${jwt.secret:mySuperSecretKeyForMessengerApplication2024}")
     private String jwtSecret;
 
@@ -17,12 +33,57 @@ public class JwtUtil {
     @Value("${jwt.refresh.expiration:63072000000}") // 2 ГОДА в миллисекундах
     private long refreshTokenExpiration;
 
+    @Value("${jwt.cache.max-size:100000}")
+    private long cacheMaxSize;
+
+    // Верхняя граница жизни записи, даже если exp токена далеко
+    @Value("${jwt.cache.max-ttl-seconds:600}")
+    private long cacheMaxTtlSeconds;
+
+    // Ключ и парсер создаются один раз (парсер потокобезопасен).
+    // Секрет, как и раньше в setSigningKey(String), - Base64: старые токены остаются валидными
+    private Key signingKey;
+    private JwtParser jwtParser;
+
+    // SHA-256(токен) -> проверенные claims. Запись живёт не дольше exp токена
+    private Cache<String, Claims> verifiedTokens;
+
+    @PostConstruct
+    public void init() {
+        signingKey = new SecretKeySpec(Decoders.BASE64.decode(jwtSecret), SignatureAlgorithm.HS512.getJcaName());
+        jwtParser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+
+        verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfter(new Expiry<String, Claims>() {
+                    @Override
+                    public long expireAfterCreate(String key, Claims claims, long currentTime) {
+                        long ttlMs = TimeUnit.SECONDS.toMillis(cacheMaxTtlSeconds);
+                        if (claims.getExpiration() != null) {
+                            ttlMs = Math.min(ttlMs, claims.getExpiration().getTime() - System.currentTimeMillis());
+                        }
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, ttlMs));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
     public String generateAccessToken(String username) {
         return Jwts.builder()
                 .setSubject(username)
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + accessTokenExpiration))
-                .signWith(SignatureAlgorithm.HS512, jwtSecret)
+                .signWith(signingKey, SignatureAlgorithm.HS512)
                 .compact();
     }
 
@@ -31,30 +92,44 @@ public class JwtUtil {
                 .setSubject(username)
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + refreshTokenExpiration))
-                .signWith(SignatureAlgorithm.HS512, jwtSecret)
+                .signWith(signingKey, SignatureAlgorithm.HS512)
                 .compact();
     }
 
-    public String getUsernameFromToken(String token) {
-        return Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(token).getBody().getSubject();
+    /**
+     * Проверка подписи и срока + разбор - один раз на токен, дальше из кэша.
+     * Невалидный токен - JwtException (в кэш не попадает)
+     */
+    public Claims getVerifiedClaims(String token) {
+        return verifiedTokens.get(hash(token), key -> jwtParser.parseClaimsJws(token).getBody());
     }
 
-    public boolean validateToken(String token) {
+    /**
+     * Username из валидного токена или null - одна проверка вместо extractUsername + validateToken
+     */
+    public String validateAndGetUsername(String token) {
         try {
-            Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(token);
-            return true;
+            return getVerifiedClaims(token).getSubject();
         } catch (ExpiredJwtException e) {
-            System.out.println("JWT token expired: " + e.getMessage());
-            return false;
+            log.debug("JWT token expired: {}", e.getMessage());
+            return null;
         } catch (Exception e) {
-            System.out.println("JWT validation error: " + e.getMessage());
-            return false;
+            log.debug("JWT validation error: {}", e.getMessage());
+            return null;
         }
     }
 
+    public String getUsernameFromToken(String token) {
+        return getVerifiedClaims(token).getSubject();
+    }
+
+    public boolean validateToken(String token) {
+        return validateAndGetUsername(token) != null;
+    }
+
     public boolean isTokenExpired(String token) {
         try {
-            Claims claims = Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(token).getBody();
+            Claims claims = getVerifiedClaims(token);
             return claims.getExpiration().before(new Date());
         } catch (Exception e) {
             return true;
@@ -73,4 +148,14 @@ public class JwtUtil {
     public String extractUsername(String token) {
         return getUsernameFromToken(token);
     }
-}
\ No newline at end of file
+
+    // В кэше не держим сами токены
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.messenger.messengerserver.util;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Не чаще одной записи в лог за интервал для повторяющихся предупреждений на горячем пути
+ * (Redis недоступен, переполнен пул и т.п.). Пропущенные события считаются и сообщаются со следующей записью
+ */
+public final class LogThrottle {
+
+    private final long intervalNanos;
+    private final AtomicLong nextAllowedAt;
+    private final LongAdder suppressed = new LongAdder();
+
+    public LogThrottle(Duration interval) {
+        this.intervalNanos = interval.toNanos();
+        this.nextAllowedAt = new AtomicLong(System.nanoTime() - intervalNanos);
+    }
+
+    /**
+     * -1 - писать не нужно; иначе - сколько событий пропущено с прошлой записи
+     */
+    public long tryAcquire() {
+        long now = System.nanoTime();
+        long next = nextAllowedAt.get();
+        if (now - next >= 0 && nextAllowedAt.compareAndSet(next, now + intervalNanos)) {
+            return suppressed.sumThenReset();
+        }
+        suppressed.increment();
+        return -1;
+    }
+}
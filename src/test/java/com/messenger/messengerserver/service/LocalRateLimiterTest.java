@@ -0,0 +1,61 @@
+package com.messenger.messengerserver.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(60_000);
+    private final LocalRateLimiter rateLimiter = new LocalRateLimiter(60_000, 1000, now::get);
+
+    @Test
+    void rejectsOverLimitWithinWindowAndKeysAreIndependent() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(rateLimiter.tryAcquire("ip:1.2.3.4", 10));
+        }
+        assertFalse(rateLimiter.tryAcquire("ip:1.2.3.4", 10));
+        assertTrue(rateLimiter.tryAcquire("ip:5.6.7.8", 10));
+    }
+
+    @Test
+    void requestRejectedByFirstLimitDoesNotConsumeSecond() {
+        for (int i = 0; i < 2; i++) {
+            assertEquals(0, rateLimiter.tryAcquire("ip:1.2.3.4", 2, "user:alice", 3));
+        }
+        assertEquals(1, rateLimiter.tryAcquire("ip:1.2.3.4", 2, "user:alice", 3));
+
+        // Лимит пользователя потрачен только пропущенными запросами
+        assertEquals(0, rateLimiter.tryAcquire("ip:5.6.7.8", 10, "user:alice", 3));
+        assertEquals(2, rateLimiter.tryAcquire("ip:5.6.7.8", 10, "user:alice", 3));
+    }
+
+    @Test
+    void previousWindowStillCountsRightAfterBoundary() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(rateLimiter.tryAcquire("user:alice", 10));
+        }
+
+        // На границе окна прежний счётчик весит полностью - нет удвоенного всплеска
+        now.set(120_000);
+        assertFalse(rateLimiter.tryAcquire("user:alice", 10));
+
+        // Середина окна: половина предыдущего (5) - доступно ещё 5
+        now.set(120_000 + 30_000);
+        int allowed = 0;
+        for (int i = 0; i < 10; i++) {
+            if (rateLimiter.tryAcquire("user:alice", 10)) {
+                allowed++;
+            }
+        }
+        assertEquals(5, allowed);
+
+        // Через два окна без запросов - снова полный лимит
+        now.set(240_000);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(rateLimiter.tryAcquire("user:alice", 10));
+        }
+    }
+}
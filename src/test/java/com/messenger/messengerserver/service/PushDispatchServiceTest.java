@@ -0,0 +1,120 @@
+package com.messenger.messengerserver.service;
+
+import com.google.firebase.messaging.Message;
+import com.messenger.messengerserver.model.User;
+import com.messenger.messengerserver.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class PushDispatchServiceTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final FakeTransport transport = new FakeTransport();
+    private PushDispatchService pushDispatchService;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        pushDispatchService.stop();
+    }
+
+    @Test
+    void coalescesIntoOneBatchRetriesTransientErrorsAndDropsUnregisteredTokens() throws Exception {
+        when(userRepository.findByUsernameIn(anyCollection())).thenReturn(List.of(
+                user("alice", "token-alice"),
+                user("bob", "token-bob"),
+                user("carol", "token-carol"),
+                user("dave", null)));
+
+        transport.outcomes.put("token-bob", new ArrayDeque<>(List.of(PushTransport.Outcome.UNREGISTERED)));
+        transport.outcomes.put("token-carol", new ArrayDeque<>(List.of(
+                PushTransport.Outcome.RETRYABLE, PushTransport.Outcome.SENT)));
+
+        pushDispatchService = new PushDispatchService(transport, userRepository, 1, 50, 3, 10, 100);
+        pushDispatchService.start();
+
+        for (String recipient : List.of("alice", "bob", "carol", "dave")) {
+            assertTrue(pushDispatchService.enqueue(recipient, (token, users) -> {
+                Message message = Message.builder().setToken(token).putData("type", "NEW_MESSAGE").build();
+                transport.tokens.put(message, token);
+                return message;
+            }));
+        }
+
+        waitUntil(() -> transport.calls.size() >= 2);
+
+        // Первый вызов - вся пачка сразу (у dave нет токена), второй - повтор для carol
+        assertEquals(3, transport.calls.get(0).size());
+        assertEquals(1, transport.calls.get(1).size());
+        verify(userRepository, times(1)).findByUsernameIn(anyCollection());
+        verify(userRepository).clearFcmToken("bob", "token-bob");
+        verify(userRepository, never()).clearFcmToken(eq("carol"), anyString());
+    }
+
+    @Test
+    void urgentNotificationDoesNotWaitForLingeringBatch() throws Exception {
+        when(userRepository.findByUsernameIn(anyCollection())).thenReturn(List.of(
+                user("alice", "token-alice"),
+                user("bob", "token-bob")));
+
+        // Обычная пачка копится 2 секунды
+        pushDispatchService = new PushDispatchService(transport, userRepository, 1, 2000, 3, 10, 100);
+        pushDispatchService.start();
+
+        assertTrue(pushDispatchService.enqueue("alice", (token, users) -> message(token, "NEW_MESSAGE")));
+        assertTrue(pushDispatchService.enqueueUrgent("bob", List.of("alice"),
+                (token, users) -> message(token, "INCOMING_CALL")));
+
+        waitUntil(() -> !transport.calls.isEmpty());
+        assertEquals(List.of("token-bob"), transport.calls.get(0));
+    }
+
+    private Message message(String token, String type) {
+        Message message = Message.builder().setToken(token).putData("type", type).build();
+        transport.tokens.put(message, token);
+        return message;
+    }
+
+    private static User user(String username, String fcmToken) {
+        User user = new User();
+        user.setUsername(username);
+        user.setFcmToken(fcmToken);
+        return user;
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for push dispatch");
+            Thread.sleep(10);
+        }
+    }
+
+    // Локальный транспорт: запоминает вызовы и отвечает заранее заданными результатами по токену
+    private static class FakeTransport implements PushTransport {
+        private final Map<String, Deque<Outcome>> outcomes = new HashMap<>();
+        private final Map<Message, String> tokens = Collections.synchronizedMap(new IdentityHashMap<>());
+        private final List<List<String>> calls = new CopyOnWriteArrayList<>();
+
+        @Override
+        public synchronized List<Outcome> sendEach(List<Message> messages) {
+            List<String> sentTokens = new ArrayList<>();
+            List<Outcome> result = new ArrayList<>();
+            for (Message message : messages) {
+                String token = tokens.get(message);
+                sentTokens.add(token);
+                Deque<Outcome> planned = outcomes.get(token);
+                result.add(planned != null && !planned.isEmpty() ? planned.poll() : Outcome.SENT);
+            }
+            calls.add(sentTokens);
+            return result;
+        }
+    }
+}
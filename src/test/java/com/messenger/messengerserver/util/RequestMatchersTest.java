@@ -0,0 +1,46 @@
+package com.messenger.messengerserver.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestMatchersTest {
+
+    @Test
+    void ahoCorasickFindsOverlappingPatternsIgnoringCase() {
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(List.of(".git", ".env", "wp-admin", "mysql", "sql"));
+
+        assertTrue(matcher.containsAny("/.GIT/config"));
+        assertTrue(matcher.containsAny("/foo/.Env"));
+        assertTrue(matcher.containsAny("/wp-ADMIN/setup.php"));
+        // Обрыв на "mysq" - "sql" находится через суффиксную ссылку, без возврата по входу
+        assertTrue(matcher.containsAny("/mysqsql"));
+        assertTrue(matcher.containsAny("/путь/.git"));
+        assertFalse(matcher.containsAny("/api/messages/send"));
+        assertFalse(matcher.containsAny("/api/пользователи"));
+        assertFalse(matcher.containsAny(null));
+    }
+
+    @Test
+    void cidrMatcherUsesRealPrefixesForIpv4AndIpv6() {
+        CidrMatcher matcher = new CidrMatcher(List.of("10.0.0.0/8", "172.16.0.0/12", "127.0.0.1", "::1", "fd00::/8"));
+
+        assertTrue(matcher.matches("10.200.3.4"));
+        assertTrue(matcher.matches("172.31.255.255"));
+        assertFalse(matcher.matches("172.32.0.1"));
+        assertFalse(matcher.matches("172.160.0.1"));
+        assertTrue(matcher.matches("127.0.0.1"));
+        assertFalse(matcher.matches("127.0.0.2"));
+        assertTrue(matcher.matches("0:0:0:0:0:0:0:1"));
+        assertTrue(matcher.matches("fd12:3456::1"));
+        assertFalse(matcher.matches("2001:db8::1"));
+
+        // Не литералы IP - не совпадают и не резолвятся
+        assertFalse(matcher.matches("localhost"));
+        assertFalse(matcher.matches("10.0.0"));
+        assertFalse(matcher.matches("10.0.0.256"));
+        assertFalse(matcher.matches("unknown"));
+    }
+}